@@ -21,6 +21,7 @@ import static io.leitstand.event.queue.model.Message.findMessageByDomainEventId;
 import static io.leitstand.event.queue.model.Message.findMessagesByTopic;
 import static io.leitstand.event.queue.model.Topic.findTopicNames;
 import static io.leitstand.event.queue.service.DomainEvent.newDomainEvent;
+import static io.leitstand.event.queue.service.MessageSent.newMessageSent;
 import static io.leitstand.event.queue.service.ReasonCode.BUS0002E_MESSAGE_NOT_FOUND;
 import static io.leitstand.event.queue.service.ReasonCode.BUS0003E_INCOMPATIBLE_PAYLOAD_TYPE;
 import static java.lang.String.format;
@@ -30,6 +31,7 @@ import java.util.List;
 import java.util.SortedSet;
 import java.util.logging.Logger;
 
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
 
 import io.leitstand.commons.EntityNotFoundException;
@@ -40,6 +42,7 @@ import io.leitstand.event.queue.service.DomainEvent;
 import io.leitstand.event.queue.service.DomainEventId;
 import io.leitstand.event.queue.service.DomainEventName;
 import io.leitstand.event.queue.service.EventQueueService;
+import io.leitstand.event.queue.service.MessageSent;
 import io.leitstand.event.queue.service.TopicName;
 
 @Service
@@ -54,15 +57,19 @@ public class DefaultEventQueueService implements EventQueueService{
 	@Inject
 	private TopicProvider topics;
 	
+	@Inject
+	private Event<MessageSent> sent;
 	
 	public DefaultEventQueueService() {
 		// EJB
 	}
 	
 	DefaultEventQueueService(Repository repository,
-							 TopicProvider topics){
+							 TopicProvider topics,
+							 Event<MessageSent> sent){
 		this.repository = repository;
 		this.topics = topics;
+		this.sent = sent;
 	}
 	
 	@Override
@@ -72,6 +79,14 @@ public class DefaultEventQueueService implements EventQueueService{
 									  event);
 		repository.add(message);
 		
+		// Inform observers about the new message, 
+		// e.g. to wake up consumers after the transaction has been committed.
+		sent.fire(newMessageSent()
+				  .withTopicName(event.getTopicName())
+				  .withDomainEventId(event.getDomainEventId())
+				  .withDomainEventName(event.getDomainEventName())
+				  .build());
+		
 		return event.getDomainEventId();
 	}
 
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.queue.service;
+
+import static io.leitstand.commons.model.BuilderUtil.assertNotInvalidated;
+
+import io.leitstand.commons.model.ValueObject;
+
+/**
+ * Informs about a domain event that has been added to the event queue.
+ * <p>
+ * The {@link EventQueueService} fires a <code>MessageSent</code> CDI event for every sent domain event. 
+ * Observers interested in the transaction outcome can subscribe for the 
+ * <code>AFTER_SUCCESS</code> transaction phase to get notified when the domain event has been committed.
+ */
+public class MessageSent extends ValueObject {
+
+	/**
+	 * Creates a <code>MessageSent</code> event.
+	 * @return a builder to create a <code>MessageSent</code> event.
+	 */
+	public static Builder newMessageSent() {
+		return new Builder();
+	}
+	
+	/**
+	 * Builder for an immutable <code>MessageSent</code> event.
+	 */
+	public static class Builder {
+		
+		private MessageSent event = new MessageSent();
+		
+		/**
+		 * Sets the topic name.
+		 * @param topicName the topic name
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withTopicName(TopicName topicName) {
+			assertNotInvalidated(getClass(), event);
+			event.topicName = topicName;
+			return this;
+		}
+		
+		/**
+		 * Sets the domain event ID.
+		 * @param eventId the domain event ID
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withDomainEventId(DomainEventId eventId) {
+			assertNotInvalidated(getClass(), event);
+			event.domainEventId = eventId;
+			return this;
+		}
+
+		/**
+		 * Sets the domain event name.
+		 * @param eventName the domain event name
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withDomainEventName(DomainEventName eventName) {
+			assertNotInvalidated(getClass(), event);
+			event.domainEventName = eventName;
+			return this;
+		}
+		
+		/**
+		 * Returns the immutable <code>MessageSent</code> event and invalidates this builder.
+		 * @return the immutable <code>MessageSent</code> event.
+		 */
+		public MessageSent build() {
+			try {
+				assertNotInvalidated(getClass(), event);
+				return event;
+			} finally {
+				this.event = null;
+			}
+		}
+	}
+	
+	private TopicName topicName;
+	private DomainEventId domainEventId;
+	private DomainEventName domainEventName;
+	
+	/**
+	 * Returns the name of the topic the domain event was sent to.
+	 * @return the topic name.
+	 */
+	public TopicName getTopicName() {
+		return topicName;
+	}
+	
+	/**
+	 * Returns the ID of the sent domain event.
+	 * @return the domain event ID.
+	 */
+	public DomainEventId getDomainEventId() {
+		return domainEventId;
+	}
+	
+	/**
+	 * Returns the name of the sent domain event.
+	 * @return the domain event name.
+	 */
+	public DomainEventName getDomainEventName() {
+		return domainEventName;
+	}
+	
+}
@@ -15,20 +15,26 @@
  */
 package io.leitstand.event.queue.model;
 
+import static io.leitstand.event.queue.service.DomainEvent.newDomainEvent;
 import static io.leitstand.event.queue.service.DomainEventId.randomDomainEventId;
 import static io.leitstand.event.queue.service.ReasonCode.BUS0002E_MESSAGE_NOT_FOUND;
 import static io.leitstand.event.queue.service.ReasonCode.BUS0003E_INCOMPATIBLE_PAYLOAD_TYPE;
 import static io.leitstand.testing.ut.LeitstandCoreMatchers.reason;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentCaptor.forClass;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import javax.enterprise.event.Event;
 import javax.json.JsonObject;
 
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -37,6 +43,10 @@ import io.leitstand.commons.EntityNotFoundException;
 import io.leitstand.commons.UnprocessableEntityException;
 import io.leitstand.commons.model.Query;
 import io.leitstand.commons.model.Repository;
+import io.leitstand.event.queue.service.DomainEvent;
+import io.leitstand.event.queue.service.DomainEventName;
+import io.leitstand.event.queue.service.MessageSent;
+import io.leitstand.event.queue.service.TopicName;
 
 @RunWith(MockitoJUnitRunner.class)
 public class DefaultEventQueueServiceTest {
@@ -50,6 +60,9 @@ public class DefaultEventQueueServiceTest {
 	@Mock
 	private Repository repository;
 	
+	@Mock
+	private Event<MessageSent> sent;
+	
 	@InjectMocks
 	private DefaultEventQueueService service = new DefaultEventQueueService();
 	
@@ -79,4 +92,23 @@ public class DefaultEventQueueServiceTest {
 	}
 	
 	
+	@Test
+	public void fire_message_sent_event_when_domain_event_was_sent() {
+		TopicName topicName = TopicName.valueOf("unittest");
+		when(topicProvider.getOrCreateTopic(topicName)).thenReturn(new Topic(topicName));
+		DomainEvent<String> event = newDomainEvent(String.class)
+									.withTopicName(topicName)
+									.withDomainEventName(DomainEventName.valueOf("unittest"))
+									.withPayload("unittest")
+									.build();
+		ArgumentCaptor<MessageSent> sentCaptor = forClass(MessageSent.class);
+		
+		service.send(event);
+		
+		verify(sent).fire(sentCaptor.capture());
+		assertEquals(event.getTopicName(),sentCaptor.getValue().getTopicName());
+		assertEquals(event.getDomainEventId(),sentCaptor.getValue().getDomainEventId());
+		assertEquals(event.getDomainEventName(),sentCaptor.getValue().getDomainEventName());
+	}
+	
 }
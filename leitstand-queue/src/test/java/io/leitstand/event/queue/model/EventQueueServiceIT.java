@@ -22,6 +22,8 @@ import static org.junit.Assert.assertNotSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
+import javax.enterprise.event.Event;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -45,7 +47,8 @@ public class EventQueueServiceIT extends EventsIT{
 		tx = mock(EventQueueSubtransactionService.class);
 		TopicProvider topics = new TopicProvider(repo, tx);
 		service = new DefaultEventQueueService(repo, 
-											   topics);
+											   topics,
+											   mock(Event.class));
 	}
 	
 	@Test
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Processes a webhook batch without blocking a thread while waiting for the webhook responses.
+ * <p>
+ * The invocations of a batch are sent one after another in the order of the domain events.
+ * The next invocation is sent as soon as the response of the previous invocation has been processed.
+ * The calling thread is released immediately after the first request was sent,
+ * such that a small number of threads can process many batches of slow webhook endpoints at the same time.
+ */
+public class AsyncWebhookBatchProcessor extends WebhookBatchProcessor {
+
+	public AsyncWebhookBatchProcessor(WebhookEventLoop loop, 
+									  WebhookClient client, 
+									  WebhookBatch batch) {
+		super(loop, client, batch);
+	}
+	
+	@Override
+	public void run() {
+		dispatch().whenComplete((done, e) -> getLoop().batchCompleted(getBatch(), getResults()));
+	}
+	
+	CompletableFuture<Void> dispatch() {
+		CompletableFuture<Void> invocations = completedFuture(null);
+		if(getBatch().isBatchDelivery()) {
+			for(List<WebhookInvocation> items : groupByEndpoint(getBatch().getWebhookInvocations())) {
+				invocations = invocations.thenCompose(previous -> callBatchAsync(items));
+			}
+			return invocations;
+		}
+		for(WebhookInvocation invocation : getBatch().getWebhookInvocations()) {
+			invocations = invocations.thenCompose(previous -> callAsync(invocation));
+		}
+		return invocations;
+	}
+	
+	CompletableFuture<Void> callAsync(WebhookInvocation invocation) {
+		if(!acquirePermission()) {
+			rejected(invocation);
+			return completedFuture(null);
+		}
+		long start = currentTimeMillis();
+		try {
+			CompletableFuture<HttpResponse<String>> call = getClient().sendAsync(newHttpRequest(newRequest(invocation), invocation));
+			watch(start, () -> call.completeExceptionally(new HttpTimeoutException("Invocation deadline exceeded")));
+			return call.handle((response, e) -> {
+							unwatch();
+							try {
+								completed(invocation, response, e, start);
+							} finally {
+								releasePermission();
+							}
+							return null;
+						});
+		} catch (Exception e) {
+			failed(invocation, e, start);
+			releasePermission();
+			return completedFuture(null);
+		}
+	}
+
+	CompletableFuture<Void> callBatchAsync(List<WebhookInvocation> items) {
+		if(!acquirePermission()) {
+			items.forEach(this::rejected);
+			return completedFuture(null);
+		}
+		String body = encode(items);
+		long start = currentTimeMillis();
+		try {
+			CompletableFuture<HttpResponse<String>> call = getClient().sendAsync(newBatchRequest(items, body));
+			watch(start, () -> call.completeExceptionally(new HttpTimeoutException("Invocation deadline exceeded")));
+			return call.handle((response, e) -> {
+							unwatch();
+							try {
+								completed(items, response, e, start);
+							} finally {
+								releasePermission();
+							}
+							return null;
+						});
+		} catch (Exception e) {
+			failed(items, e, start);
+			releasePermission();
+			return completedFuture(null);
+		}
+	}
+	
+	private void completed(List<WebhookInvocation> items, 
+						   HttpResponse<String> response, 
+						   Throwable e, 
+						   long start) {
+		if(e != null) {
+			Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+			failed(items, cause, start);
+			return;
+		}
+		completed(items, response, start);
+	}
+
+	private void completed(WebhookInvocation invocation, 
+						   HttpResponse<String> response, 
+						   Throwable e, 
+						   long start) {
+		if(e != null) {
+			failed(invocation, e instanceof CompletionException ? e.getCause() : e, start);
+			return;
+		}
+		try {
+			completed(invocation, response, start);
+		} catch (Exception f) {
+			// Keep processing the remaining invocations of the batch.
+			failed(invocation, f, start);
+		}
+	}
+	
+}
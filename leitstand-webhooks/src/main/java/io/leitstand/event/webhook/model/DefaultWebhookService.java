@@ -28,6 +28,7 @@ import static io.leitstand.event.queue.model.Message.findMessageByDomainEventId;
 import static io.leitstand.event.queue.service.DomainEvent.newDomainEvent;
 import static io.leitstand.event.queue.service.ReasonCode.BUS0002E_MESSAGE_NOT_FOUND;
 import static io.leitstand.event.webhook.model.Webhook.findWebhooksByName;
+import static io.leitstand.event.webhook.model.WebhookModified.webhookModified;
 import static io.leitstand.event.webhook.model.Webhook_Message.findMessage;
 import static io.leitstand.event.webhook.model.Webhook_Message.findWebhookMessages;
 import static io.leitstand.event.webhook.model.Webhook_Message.resetWebhookCalls;
@@ -50,6 +51,7 @@ import static java.util.stream.Collectors.toList;
 import java.util.List;
 import java.util.logging.Logger;
 
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.json.JsonObject;
 
@@ -97,6 +99,9 @@ public class DefaultWebhookService implements WebhookService{
 	@Inject
 	private WebhookStatisticsService statistics;
 	
+	@Inject
+	private Event<WebhookModified> modified;
+	
 	public DefaultWebhookService() {
 		//CDI
 	}
@@ -106,13 +111,15 @@ public class DefaultWebhookService implements WebhookService{
 								 Messages messages,
 								 MasterSecret secret,
 								 WebhookProvider webhooks,
-								 WebhookStatisticsService statistics) {
+								 WebhookStatisticsService statistics,
+								 Event<WebhookModified> modified) {
 		this.repository = repository;
 		this.topics	    = topics;
 		this.messages	= messages;
 		this.secret		= secret;
 		this.webhooks   = webhooks;
 		this.statistics = statistics;
+		this.modified   = modified;
 	}
 	
 	private String decrypt64(String encrypted64) {
@@ -182,6 +189,15 @@ public class DefaultWebhookService implements WebhookService{
 		hook.setPassword64(encrypt64(settings.getPassword()));
 		hook.setAccessKey64(encrypt64(settings.getAccesskey()));
 		hook.setBatchSize(settings.getBatchSize());
+		hook.setErrorPolicy(settings.getErrorPolicy());
+		hook.setRateLimit(settings.getRateLimit());
+		hook.setRateBurst(settings.getRateBurst());
+		hook.setMaxBatchSize(settings.getMaxBatchSize());
+		hook.setDeliveryMode(settings.getDeliveryMode());
+		hook.setCompression(settings.getCompression());
+		hook.setConnectTimeout(settings.getConnectTimeout());
+		hook.setReadTimeout(settings.getReadTimeout());
+		hook.setCallTimeout(settings.getCallTimeout());
 		if(settings.isEnabled()) {
 			hook.enable();
 		} else {
@@ -194,6 +210,7 @@ public class DefaultWebhookService implements WebhookService{
 				  			  settings.getWebhookName()));
 
 		messages.add(createMessage(WHK0001I_WEBHOOK_STORED, settings.getWebhookName()));
+		modified.fire(webhookModified(hook));
 		
 		return hook.getId() == null;
 	}
@@ -222,6 +239,15 @@ public class DefaultWebhookService implements WebhookService{
 			   .withTopicName(hook.getTopicName())
 			   .withSelector(hook.getSelector())
 			   .withBatchSize(hook.getBatchSize())
+			   .withErrorPolicy(hook.getErrorPolicy())
+			   .withRateLimit(hook.getRateLimit())
+			   .withRateBurst(hook.getRateBurst())
+			   .withMaxBatchSize(hook.getMaxBatchSize())
+			   .withDeliveryMode(hook.getDeliveryMode())
+			   .withCompression(hook.getCompression())
+			   .withConnectTimeout(hook.getConnectTimeout())
+			   .withReadTimeout(hook.getReadTimeout())
+			   .withCallTimeout(hook.getCallTimeout())
 			   .withDescription(hook.getDescription())
 			   .withEndpoint(hook.getEndpoint())
 			   .withMethod(hook.getHttpMethod())
@@ -243,6 +269,7 @@ public class DefaultWebhookService implements WebhookService{
 						   		  id));
 			messages.add(createMessage(WHK0003I_WEBHOOK_REMOVED, 
 									   hook.getWebhookName()));
+			modified.fire(webhookModified(hook));
 		}
 	}
 
@@ -257,6 +284,7 @@ public class DefaultWebhookService implements WebhookService{
 						   		  name));
 			messages.add(createMessage(WHK0003I_WEBHOOK_REMOVED, 
 									   name));
+			modified.fire(webhookModified(hook));
 		}		
 	}
 
@@ -400,6 +428,7 @@ public class DefaultWebhookService implements WebhookService{
 		messages.add(createMessage(WHK0008I_WEBHOOK_ENABLED, 
 								   webhook.getWebhookId(),
 								   webhook.getWebhookName()));
+		modified.fire(webhookModified(webhook));
 	}
 	
 
@@ -426,6 +455,7 @@ public class DefaultWebhookService implements WebhookService{
 		messages.add(createMessage(WHK0007I_WEBHOOK_DISABLED, 
 								   webhook.getWebhookId(),
 								   webhook.getWebhookName()));
+		modified.fire(webhookModified(webhook));
 	}
 
 	@Override
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.json.MapUnmarshaller.unmarshal;
+import static java.util.Collections.unmodifiableList;
+import static javax.json.JsonValue.ValueType.OBJECT;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import io.leitstand.commons.template.Template;
+import io.leitstand.event.webhook.service.Endpoint;
+
+/**
+ * A compiled webhook endpoint URL template.
+ * <p>
+ * An endpoint without placeholders is returned as is without inspecting the domain event.
+ * For an endpoint with simple placeholders like <code>{{image.image_name}}</code> 
+ * only the referenced properties are read from the domain event.
+ * All other endpoint templates are applied to the complete domain event.
+ */
+class EndpointTemplate {
+	
+	private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{(.*?)\\}\\}");
+	private static final Pattern PROPERTY_PATH = Pattern.compile("[\\w\\-]+(\\.[\\w\\-]+)*");
+	
+	/**
+	 * Returns whether the given endpoint contains placeholders.
+	 * @param endpoint the endpoint
+	 * @return <code>true</code> if the endpoint is a template, <code>false</code> if the endpoint is a constant URL.
+	 */
+	static boolean isTemplate(Endpoint endpoint) {
+		return endpoint.getValue().contains("{{");
+	}
+	
+	/**
+	 * Creates an endpoint template for a constant endpoint URL.
+	 * @param endpoint the endpoint URL
+	 * @return the endpoint template.
+	 */
+	static EndpointTemplate constant(Endpoint endpoint) {
+		return new EndpointTemplate(endpoint, null, null);
+	}
+	
+	/**
+	 * Creates an endpoint template.
+	 * @param endpoint the endpoint URL template
+	 * @param template the compiled template
+	 * @return the endpoint template.
+	 */
+	static EndpointTemplate template(Endpoint endpoint, Template<String> template) {
+		return new EndpointTemplate(endpoint, template, propertyPaths(endpoint));
+	}
+	
+	/**
+	 * Returns the property paths of all placeholders or <code>null</code>,
+	 * if a placeholder is not a simple property reference (e.g. a section). 
+	 */
+	private static List<String[]> propertyPaths(Endpoint endpoint) {
+		List<String[]> paths = new LinkedList<>();
+		Matcher placeholders = PLACEHOLDER.matcher(endpoint.getValue());
+		while(placeholders.find()) {
+			String path = placeholders.group(1).trim();
+			if(!PROPERTY_PATH.matcher(path).matches()) {
+				return null;
+			}
+			paths.add(path.split("\\."));
+		}
+		return unmodifiableList(paths);
+	}
+	
+	private final Endpoint endpoint;
+	private final Template<String> template;
+	private final List<String[]> paths;
+	
+	private EndpointTemplate(Endpoint endpoint, 
+							 Template<String> template, 
+							 List<String[]> paths) {
+		this.endpoint = endpoint;
+		this.template = template;
+		this.paths = paths;
+	}
+	
+	/**
+	 * Returns the endpoint URL template.
+	 * @return the endpoint URL template.
+	 */
+	Endpoint getEndpoint() {
+		return endpoint;
+	}
+	
+	/**
+	 * Returns whether this endpoint has placeholders.
+	 * @return <code>true</code> if this endpoint has placeholders, <code>false</code> if not.
+	 */
+	boolean isTemplate() {
+		return template != null;
+	}
+	
+	/**
+	 * Resolves the endpoint URL for the given domain event.
+	 * @param event the domain event
+	 * @return the endpoint URL.
+	 */
+	Endpoint apply(WebhookEnvelope event) {
+		if(template == null) {
+			return endpoint;
+		}
+		return apply(event.toJson());
+	}
+	
+	/**
+	 * Resolves the endpoint URL for the given domain event.
+	 * @param event the domain event
+	 * @return the endpoint URL.
+	 */
+	Endpoint apply(JsonObject event) {
+		if(template == null) {
+			return endpoint;
+		}
+		return Endpoint.valueOf(template.apply(properties(event)));
+	}
+	
+	private Map<String,Object> properties(JsonObject event) {
+		if(paths == null) {
+			return unmarshal(event).toMap();
+		}
+		Map<String,Object> properties = new HashMap<>();
+		for(String[] path : paths) {
+			JsonValue value = event;
+			Map<String,Object> target = properties;
+			for(int i=0; i < path.length; i++) {
+				if(value == null || value.getValueType() != OBJECT) {
+					value = null;
+					break;
+				}
+				value = ((JsonObject)value).get(path[i]);
+				if(i < path.length - 1) {
+					target = nested(target, path[i]);
+				}
+			}
+			if(value == null) {
+				continue;
+			}
+			switch(value.getValueType()) {
+				case STRING: target.put(path[path.length-1], ((JsonString)value).getString()); break;
+				case NUMBER: target.put(path[path.length-1], ((JsonNumber)value).bigDecimalValue()); break;
+				case TRUE:	 target.put(path[path.length-1], Boolean.TRUE); break;
+				case FALSE:	 target.put(path[path.length-1], Boolean.FALSE); break;
+				case NULL:   break;
+				default:
+					// Placeholder refers to an object or array.
+					return unmarshal(event).toMap();
+			}
+		}
+		return properties;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Map<String,Object> nested(Map<String,Object> properties, String name) {
+		return (Map<String,Object>) properties.computeIfAbsent(name, key -> new HashMap<String,Object>());
+	}
+	
+}
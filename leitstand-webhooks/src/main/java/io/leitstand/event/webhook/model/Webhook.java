@@ -16,6 +16,9 @@
 package io.leitstand.event.webhook.model;
 
 import static io.leitstand.commons.model.StringUtil.isNonEmptyString;
+import static io.leitstand.event.webhook.service.WebhookCompression.NONE;
+import static io.leitstand.event.webhook.service.WebhookDeliveryMode.SINGLE;
+import static io.leitstand.event.webhook.service.WebhookErrorPolicy.IGNORE;
 import static javax.persistence.EnumType.STRING;
 
 import java.util.List;
@@ -40,6 +43,9 @@ import io.leitstand.event.webhook.jpa.EndpointConverter;
 import io.leitstand.event.webhook.jpa.WebhookIdConverter;
 import io.leitstand.event.webhook.jpa.WebhookNameConverter;
 import io.leitstand.event.webhook.service.Endpoint;
+import io.leitstand.event.webhook.service.WebhookCompression;
+import io.leitstand.event.webhook.service.WebhookDeliveryMode;
+import io.leitstand.event.webhook.service.WebhookErrorPolicy;
 import io.leitstand.event.webhook.service.WebhookId;
 import io.leitstand.event.webhook.service.WebhookName;
 import io.leitstand.event.webhook.service.WebhookSettings.HttpMethod;
@@ -106,6 +112,25 @@ public class Webhook extends AbstractEntity{
 	@Max(value=10, message="{batch_size.out_of_range}")
 	private int batchSize;
 	
+	@Min(value=1, message="{batch_size_max.out_of_range}")
+	@Max(value=1000, message="{batch_size_max.out_of_range}")
+	private Integer maxBatchSize;
+	
+	@Enumerated(STRING)
+	private WebhookErrorPolicy errorPolicy;
+	
+	@Enumerated(STRING)
+	private WebhookDeliveryMode deliveryMode;
+	
+	@Enumerated(STRING)
+	private WebhookCompression compression;
+	
+	private Double rateLimit;
+	private Integer connectTimeout;
+	private Integer readTimeout;
+	private Integer callTimeout;
+	private Integer rateBurst;
+	
 	@ManyToOne
 	@JoinColumn(name="topic_id", referencedColumnName="id")
 	private Topic topic;
@@ -122,6 +147,9 @@ public class Webhook extends AbstractEntity{
 		this.topic = topic;	
 		this.enabled = true;
 		this.batchSize = DEFAULT_BATCH_SIZE;
+		this.errorPolicy = IGNORE;
+		this.deliveryMode = SINGLE;
+		this.compression = NONE;
 	}
 	
 	
@@ -220,7 +248,79 @@ public class Webhook extends AbstractEntity{
 	public void setBatchSize(int batchSize) {
 		this.batchSize = batchSize;
 	}
+	
+	public Integer getMaxBatchSize() {
+		return maxBatchSize;
+	}
+	
+	public void setMaxBatchSize(Integer maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+	
+	public WebhookErrorPolicy getErrorPolicy() {
+		return errorPolicy != null ? errorPolicy : IGNORE;
+	}
+	
+	public void setErrorPolicy(WebhookErrorPolicy errorPolicy) {
+		this.errorPolicy = errorPolicy;
+	}
+	
+	public WebhookDeliveryMode getDeliveryMode() {
+		return deliveryMode != null ? deliveryMode : SINGLE;
+	}
+	
+	public void setDeliveryMode(WebhookDeliveryMode deliveryMode) {
+		this.deliveryMode = deliveryMode;
+	}
+	
+	public WebhookCompression getCompression() {
+		return compression != null ? compression : NONE;
+	}
+	
+	public void setCompression(WebhookCompression compression) {
+		this.compression = compression;
+	}
+	
+	public Double getRateLimit() {
+		return rateLimit;
+	}
+	
+	public void setRateLimit(Double rateLimit) {
+		this.rateLimit = rateLimit;
+	}
+	
+	public Integer getRateBurst() {
+		return rateBurst;
+	}
+	
+	public void setRateBurst(Integer rateBurst) {
+		this.rateBurst = rateBurst;
+	}
 
+	public Integer getConnectTimeout() {
+		return connectTimeout;
+	}
+	
+	public void setConnectTimeout(Integer connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+	
+	public Integer getReadTimeout() {
+		return readTimeout;
+	}
+	
+	public void setReadTimeout(Integer readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+	
+	public Integer getCallTimeout() {
+		return callTimeout;
+	}
+	
+	public void setCallTimeout(Integer callTimeout) {
+		this.callTimeout = callTimeout;
+	}
+	
 	public boolean isEnabled() {
 		return enabled;
 	}
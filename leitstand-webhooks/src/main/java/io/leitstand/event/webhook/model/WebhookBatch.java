@@ -21,6 +21,9 @@ import java.util.List;
 
 import javax.security.enterprise.credential.Password;
 
+import io.leitstand.event.webhook.service.WebhookCompression;
+import io.leitstand.event.webhook.service.WebhookDeliveryMode;
+import io.leitstand.event.webhook.service.WebhookErrorPolicy;
 import io.leitstand.event.webhook.service.WebhookId;
 import io.leitstand.event.webhook.service.WebhookName;
 import io.leitstand.event.webhook.service.WebhookSettings.HttpMethod;
@@ -35,6 +38,24 @@ public class WebhookBatch {
 	static class Builder {
 		private WebhookBatch batch = new WebhookBatch();
 		
+		public Builder withWebhook(WebhookConfiguration webhook) {
+			batch.webhookPK = webhook.getWebhookPK();
+			batch.webhookId = webhook.getWebhookId();
+			batch.webhookName = webhook.getWebhookName();
+			batch.method = webhook.getMethod();
+			batch.userName = webhook.getUserName();
+			batch.password = webhook.getPassword();
+			batch.accesskey = webhook.getAccesskey();
+			batch.authorization = webhook.getAuthorization();
+			batch.errorPolicy = webhook.getErrorPolicy();
+			batch.deliveryMode = webhook.getDeliveryMode();
+			batch.compression = webhook.getCompression();
+			batch.connectTimeout = webhook.getConnectTimeout();
+			batch.readTimeout = webhook.getReadTimeout();
+			batch.callTimeout = webhook.getCallTimeout();
+			return this;
+		}
+		
 		public Builder withWebhookId(WebhookId webhookId) {
 			batch.webhookId = webhookId;
 			return this;
@@ -70,6 +91,26 @@ public class WebhookBatch {
 			return this;
 		}		
 		
+		public Builder withAuthorization(String authorization) {
+			batch.authorization = authorization;
+			return this;
+		}
+		
+		public Builder withErrorPolicy(WebhookErrorPolicy errorPolicy) {
+			batch.errorPolicy = errorPolicy;
+			return this;
+		}
+		
+		public Builder withDeliveryMode(WebhookDeliveryMode deliveryMode) {
+			batch.deliveryMode = deliveryMode;
+			return this;
+		}
+		
+		public Builder withCompression(WebhookCompression compression) {
+			batch.compression = compression;
+			return this;
+		}
+		
 		public Builder withContentType(String contentType) {
 			batch.contentType = contentType;
 			return this;
@@ -98,7 +139,14 @@ public class WebhookBatch {
 	private UserName userName;
 	private Password password;
 	private String accesskey;
+	private String authorization;
 	private String contentType;
+	private WebhookErrorPolicy errorPolicy;
+	private WebhookDeliveryMode deliveryMode;
+	private WebhookCompression compression;
+	private int connectTimeout;
+	private int readTimeout;
+	private int callTimeout;
 	private List<WebhookInvocation> invocations;
  	
 
@@ -134,6 +182,54 @@ public class WebhookBatch {
 		return accesskey;
 	}
 	
+	public String getAuthorization() {
+		return authorization;
+	}
+	
+	public WebhookErrorPolicy getErrorPolicy() {
+		return errorPolicy;
+	}
+	
+	/**
+	 * Returns whether all messages of this batch are sent in a single request.
+	 * @return <code>true</code> if all messages are sent in a single request, <code>false</code> otherwise.
+	 */
+	public boolean isBatchDelivery() {
+		return deliveryMode != null && deliveryMode.isBatchDelivery();
+	}
+	
+	public WebhookDeliveryMode getDeliveryMode() {
+		return deliveryMode;
+	}
+	
+	public WebhookCompression getCompression() {
+		return compression;
+	}
+	
+	/**
+	 * Returns the timeout to establish a connection to the webhook endpoint in milliseconds.
+	 * @return the connect timeout or <code>0</code> if no connect timeout is set.
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+	
+	/**
+	 * Returns the timeout to wait for the webhook endpoint response in milliseconds.
+	 * @return the read timeout or <code>0</code> if no read timeout is set.
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+	
+	/**
+	 * Returns the deadline of a webhook invocation in milliseconds.
+	 * @return the invocation deadline or <code>0</code> if no deadline is set.
+	 */
+	public int getCallTimeout() {
+		return callTimeout;
+	}
+	
 	public List<WebhookInvocation> getWebhookInvocations() {
 		return unmodifiableList(invocations);
 	}
@@ -15,117 +15,666 @@
  */
 package io.leitstand.event.webhook.model;
 
-import static io.leitstand.commons.model.ByteArrayUtil.encodeBase64String;
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
 import static io.leitstand.commons.model.StringUtil.isNonEmptyString;
-import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
+import static io.leitstand.event.webhook.model.WebhookCircuitBreaker.REJECTED;
+import static io.leitstand.event.webhook.model.WebhookInvocationResult.invocationDeferred;
+import static io.leitstand.event.webhook.model.WebhookInvocationResult.invocationFailed;
+import static io.leitstand.event.webhook.model.WebhookInvocationResult.invocationRejected;
+import static io.leitstand.event.webhook.model.WebhookInvocationResult.invocationSucceeded;
+import static io.leitstand.event.webhook.service.ReasonCode.WHK0107E_WEBHOOK_INVOCATION_TIMED_OUT;
+import static io.leitstand.event.webhook.service.WebhookCompression.NONE;
+import static io.leitstand.event.webhook.service.WebhookDeliveryMode.NDJSON;
 import static io.leitstand.event.webhook.service.WebhookSettings.HttpMethod.PUT;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.lang.String.format;
 import static java.lang.System.currentTimeMillis;
-import static javax.ws.rs.client.ClientBuilder.newClient;
-import static javax.ws.rs.client.Entity.entity;
+import static java.lang.Thread.currentThread;
+import static java.net.http.HttpRequest.BodyPublishers.ofByteArray;
+import static java.net.http.HttpRequest.BodyPublishers.ofString;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.Duration.ofMillis;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.json.Json.createReader;
+import static javax.json.JsonValue.ValueType.ARRAY;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+import static javax.ws.rs.core.Response.Status.TOO_MANY_REQUESTS;
 import static javax.ws.rs.core.Response.Status.Family.SUCCESSFUL;
+import static javax.ws.rs.core.Response.Status.Family.familyOf;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.Builder;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.Invocation.Builder;
-import javax.ws.rs.core.Response;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.Response.Status.Family;
+import javax.ws.rs.core.Response.StatusType;
+
+import io.leitstand.event.webhook.service.Endpoint;
+import io.leitstand.event.webhook.service.WebhookCompression;
 
 public class WebhookBatchProcessor implements Runnable {
 	
 	private static final Logger LOG = Logger.getLogger(WebhookBatchProcessor.class.getName());
+	private static final long RETRY_AFTER_DEFAULT = SECONDS.toMillis(parseInt(getSystemProperty("leitstand.webhook.retry.after.default", "30")));
+	private static final int COMPRESSION_MIN_SIZE = parseInt(getSystemProperty("leitstand.webhook.compression.min.size", "1024"));
+	private static final long RETRY_AFTER_MAX = SECONDS.toMillis(parseInt(getSystemProperty("leitstand.webhook.retry.after.max", "3600")));
 
 	private WebhookBatch 	 batch;
 	private WebhookEventLoop loop;
+	private WebhookClient	 client;
+	private List<WebhookInvocationResult> results = new ArrayList<>();
+	private long deadline;
+	private Runnable cancel;
+	private boolean expired;
+	private long permit = REJECTED;
 	
 	public WebhookBatchProcessor(WebhookEventLoop loop,
+								 WebhookClient client,
 								 WebhookBatch batch) {
-		this.loop  = loop;
-		this.batch = batch;
+		this.loop   = loop;
+		this.client = client;
+		this.batch  = batch;
 	}
 	
 	
 	@Override
 	public void run() {
-		List<WebhookInvocation> invocations = batch.getWebhookInvocations();
-		for(WebhookInvocation invocation : invocations) {
-			call(newClient(),invocation);
+		try {
+			List<WebhookInvocation> invocations = batch.getWebhookInvocations();
+			if(batch.isBatchDelivery()) {
+				for(List<WebhookInvocation> items : groupByEndpoint(invocations)) {
+					callBatch(items);
+				}
+				return;
+			}
+			for(WebhookInvocation invocation : invocations) {
+				call(invocation);
+			}
+		} finally {
+			loop.batchCompleted(batch, results);
 		}
 	}				
 	
-	boolean call(Client client, WebhookInvocation invocation) {
-				
+	/**
+	 * Splits the given invocations into groups of subsequent invocations of the same endpoint.
+	 * Each group is sent in a single request. 
+	 * Invocations with an unresolvable endpoint are recorded as failed invocations.
+	 * @param invocations the invocations of the batch
+	 * @return the invocations grouped by endpoint.
+	 */
+	List<List<WebhookInvocation>> groupByEndpoint(List<WebhookInvocation> invocations) {
+		List<List<WebhookInvocation>> groups = new ArrayList<>();
+		List<WebhookInvocation> group = null;
+		Endpoint endpoint = null;
+		for(WebhookInvocation invocation : invocations) {
+			Endpoint next;
+			try {
+				next = invocation.getEndpoint();
+			} catch (RuntimeException e) {
+				failed(invocation, e, currentTimeMillis());
+				continue;
+			}
+			if(group == null || !next.equals(endpoint)) {
+				group = new ArrayList<>();
+				groups.add(group);
+				endpoint = next;
+			}
+			group.add(invocation);
+		}
+		return groups;
+	}
+	
+	boolean callBatch(List<WebhookInvocation> items) {
+		if(!acquirePermission()) {
+			items.forEach(this::rejected);
+			return false;
+		}
+		
+		String body = encode(items);
+		
+		long start = currentTimeMillis();
+		watch(start, currentThread()::interrupt);
 		try {
-			Builder request = client.target(invocation.getEndpoint().toUri())
-								    .request();
-			authenticate(request);
-			return execute(request, invocation);				
+			HttpResponse<String> response = client.send(newBatchRequest(items, body));
+			if(cancelledByWatchdog()) {
+				timedOut(items, start);
+				return false;
+			}
+			return completed(items, response, start);
+		} catch (InterruptedException e) {
+			if(cancelledByWatchdog()) {
+				timedOut(items, start);
+				return false;
+			}
+			LOG.warning(() -> format("%s webhook batch invocation (%s %s) with %d message(s) was interrupted.", 
+									 batch.getWebhookName(),
+									 batch.getMethod(),
+									 items.get(0).getEndpoint(),
+									 items.size()));
+			// Restore interrupt status
+			currentThread().interrupt();
+			return false;
 		} catch (Exception e) {
-			LOG.warning(() -> format("%s webhook invocation (%s %s) for %s (%s) failed: %s", 
+			if(cancelledByWatchdog()) {
+				timedOut(items, start);
+				return false;
+			}
+			failed(items, e, start);
+			return false;
+		} finally {
+			releasePermission();
+		}
+	}
+	
+	/**
+	 * Encodes the messages of the given invocations in a single request entity 
+	 * according to the delivery mode of the webhook.
+	 * The messages are JSON documents and are joined verbatim, i.e. they are neither parsed nor serialized again.
+	 * Line breaks are removed from NDJSON messages, since a line break delimits the next message.
+	 * A line break can only occur as whitespace between JSON tokens.
+	 * @param items the invocations to be sent
+	 * @return the request entity.
+	 */
+	String encode(List<WebhookInvocation> items) {
+		StringBuilder entity = new StringBuilder();
+		if(batch.getDeliveryMode() == NDJSON) {
+			for(WebhookInvocation item : items) {
+				String message = item.getMessage();
+				for(int i=0; i < message.length(); i++) {
+					char c = message.charAt(i);
+					if(c != '\n' && c != '\r') {
+						entity.append(c);
+					}
+				}
+				entity.append('\n');
+			}
+			return entity.toString();
+		}
+		entity.append('[');
+		for(WebhookInvocation item : items) {
+			if(entity.length() > 1) {
+				entity.append(',');
+			}
+			entity.append(item.getMessage());
+		}
+		return entity.append(']').toString();
+	}
+	
+	HttpRequest newBatchRequest(List<WebhookInvocation> items, String body) {
+		return newHttpRequest(newRequest(items.get(0).getEndpoint(), 
+										 batch.getDeliveryMode().getContentType()), 
+							  body);
+	}
+	
+	boolean call(WebhookInvocation invocation) {
+		if(!acquirePermission()) {
+			rejected(invocation);
+			return false;
+		}
+		
+		long start = currentTimeMillis();
+		watch(start, currentThread()::interrupt);
+		try {
+			HttpResponse<String> response = invokeWebhook(newRequest(invocation), invocation);
+			if(cancelledByWatchdog()) {
+				timedOut(invocation, start);
+				return false;
+			}
+			return completed(invocation, response, start);				
+		} catch (InterruptedException e) {
+			if(cancelledByWatchdog()) {
+				timedOut(invocation, start);
+				return false;
+			}
+			LOG.warning(() -> format("%s webhook invocation (%s %s) for %s (%s) was interrupted.", 
 									 batch.getWebhookName(),
 									 batch.getMethod(),
 									 invocation.getEndpoint(),
 									 invocation.getEventName(),
-									 invocation.getEventId(),
-									 e.getMessage()));
+									 invocation.getEventId()));
+			// Restore interrupt status
+			currentThread().interrupt();
 			return false;
-		} 
+		} catch (Exception e) {
+			if(cancelledByWatchdog()) {
+				timedOut(invocation, start);
+				return false;
+			}
+			failed(invocation, e, start);
+			return false;
+		} finally {
+			releasePermission();
+		}
+	}
+	
+	/**
+	 * Requests the permission to send the next request of the batch.
+	 * The permission is held until the outcome of the request has been recorded or the permission has been released.
+	 * @return <code>true</code> if the request can be sent, <code>false</code> if the request is rejected.
+	 */
+	synchronized boolean acquirePermission() {
+		permit = loop.tryAcquireDispatchPermission(batch);
+		return permit != REJECTED;
+	}
+	
+	/**
+	 * Releases the permission of the current request unless the outcome of the request has been recorded.
+	 * This applies to requests that were not sent or that were interrupted,
+	 * such that a half-open circuit breaker does not wait for a probe outcome that never arrives.
+	 */
+	synchronized void releasePermission() {
+		if(permit != REJECTED) {
+			loop.releaseDispatchPermission(batch, permit);
+			permit = REJECTED;
+		}
+	}
+	
+	/**
+	 * Returns the permit of the current request, which is consumed by the recorded outcome of the request.
+	 * @return the permit of the current request.
+	 */
+	private synchronized long consumePermission() {
+		long consumed = permit;
+		permit = REJECTED;
+		return consumed;
+	}
+	
+	/**
+	 * Starts watching the deadline of the current invocation.
+	 * @param start the invocation start timestamp
+	 * @param cancel the action to cancel the invocation when the deadline has passed
+	 */
+	synchronized void watch(long start, Runnable cancel) {
+		this.deadline = start + batch.getCallTimeout();
+		this.cancel = batch.getCallTimeout() > 0 ? cancel : null;
+		this.expired = false;
+	}
+	
+	/**
+	 * Stops watching the deadline of the current invocation.
+	 * @return <code>true</code> if the invocation has been cancelled by the watchdog, <code>false</code> otherwise.
+	 */
+	synchronized boolean unwatch() {
+		this.cancel = null;
+		return expired;
+	}
+	
+	private boolean cancelledByWatchdog() {
+		if(unwatch()) {
+			// Clear the interrupt status set by the watchdog.
+			Thread.interrupted();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Cancels the current invocation if it is running past its deadline.
+	 * @param now the current time in milliseconds
+	 * @return <code>true</code> if the current invocation has been cancelled, <code>false</code> otherwise.
+	 */
+	synchronized boolean cancelExpiredInvocation(long now) {
+		if(cancel == null || now < deadline) {
+			return false;
+		}
+		expired = true;
+		cancel.run();
+		cancel = null;
+		return true;
 	}
 
-
-	private boolean execute(Builder call, WebhookInvocation invocation) {
-		long start = currentTimeMillis();
-		Response response = invokeWebhook(call, invocation);
+	Builder newRequest(WebhookInvocation invocation) {
+		return newRequest(invocation.getEndpoint(), 
+						  invocation.getContentType());
+	}
+	
+	private Builder newRequest(Endpoint endpoint, String contentType) {
+		Builder request = HttpRequest.newBuilder(endpoint.toUri())
+									 .header("Content-Type", contentType);
+		if(batch.getReadTimeout() > 0) {
+			request.timeout(ofMillis(batch.getReadTimeout()));
+		}
+		authenticate(request);
+		return request;
+	}
+	
+	boolean completed(WebhookInvocation invocation, HttpResponse<String> response, long start) {
+		StatusType status = statusOf(response.statusCode());
 		LOG.info(() -> format("%s webhook invocation (%s %s) for %s (%s) completed with reason code %d (%s)", 
 					    	  batch.getWebhookName(),
 					    	  batch.getMethod(),
 					    	  invocation.getEndpoint(),
 					    	  invocation.getEventName(),
 					    	  invocation.getEventId(),
-					    	  response.getStatus(),
-					    	  response.getStatusInfo().getReasonPhrase()));
+					    	  status.getStatusCode(),
+					    	  status.getReasonPhrase()));
 		
-		if(response.getStatusInfo().getFamily() == SUCCESSFUL) {
-			loop.webhookSucceeded(batch,
-								  invocation,
-								  response.getStatusInfo(),
-								  start);
+		if(isOverloaded(status)) {
+			// Pause the webhook and return the remaining invocations of the batch to the queue.
+			long pause = retryAfter(response.headers().firstValue("Retry-After"), currentTimeMillis());
+			loop.pauseWebhook(batch, currentTimeMillis() + pause);
+			record(invocationDeferred(invocation, 
+									  status, 
+									  start));
+			return false;
+		}
+		
+		if(status.getFamily() == SUCCESSFUL) {
+			record(invocationSucceeded(invocation, 
+									   status, 
+									   start));
 			return true;
 		} 
 		
-		loop.webhookFailed(batch,
-						   invocation,
-						   response.getStatusInfo(),
-						   start);
+		record(invocationFailed(invocation, 
+								status, 
+								start));
 		return false;
 	}
-
-
-	void authenticate(Builder call) {
-		if(batch.getUserName() != null) {
-			call.header("Authorization", "Basic "+encodeBase64String(toUtf8Bytes(batch.getUserName()+":"+new String(batch.getPassword().getValue()))));
+	
+	boolean completed(List<WebhookInvocation> items, HttpResponse<String> response, long start) {
+		StatusType status = statusOf(response.statusCode());
+		LOG.info(() -> format("%s webhook batch invocation (%s %s) with %d message(s) completed with reason code %d (%s)", 
+							  batch.getWebhookName(),
+							  batch.getMethod(),
+							  items.get(0).getEndpoint(),
+							  items.size(),
+							  status.getStatusCode(),
+							  status.getReasonPhrase()));
+		
+		if(isOverloaded(status)) {
+			// Pause the webhook and return all messages to the queue.
+			long pause = retryAfter(response.headers().firstValue("Retry-After"), currentTimeMillis());
+			loop.pauseWebhook(batch, currentTimeMillis() + pause);
+			record(items, item -> invocationDeferred(item, 
+													 status, 
+													 start));
+			return false;
+		}
+		
+		if(status.getFamily() != SUCCESSFUL) {
+			record(items, item -> invocationFailed(item, 
+												   status, 
+												   start));
+			return false;
+		}
+		
+		// Settle every message with its own result, if provided by the webhook endpoint.
+		List<StatusType> itemStatus = itemStatusOf(response.body(), items.size());
+		List<WebhookInvocationResult> settled = new ArrayList<>(items.size());
+		boolean succeeded = true;
+		for(int i=0; i < items.size(); i++) {
+			StatusType item = itemStatus != null ? itemStatus.get(i) : status;
+			if(item.getFamily() == SUCCESSFUL) {
+				settled.add(invocationSucceeded(items.get(i), 
+												item, 
+												start));
+			} else {
+				settled.add(invocationFailed(items.get(i), 
+											 item, 
+											 start));
+				succeeded = false;
+			}
+		}
+		// Rejected items do not indicate an unhealthy endpoint, the request itself succeeded.
+		record(settled, 
+			   invocationSucceeded(items.get(0), 
+								   status, 
+								   start));
+		return succeeded;
+	}
+	
+	/**
+	 * Reads the optional per-item results from the response of a batch request.
+	 * The response conveys per-item results if the response entity is a JSON array 
+	 * with an object for every sent message in the order of the sent messages,
+	 * and every object has a numeric <code>status</code> property.
+	 * @param body the response entity
+	 * @param items the number of sent messages
+	 * @return the per-item status codes or <code>null</code> if the response does not convey per-item results.
+	 */
+	static List<StatusType> itemStatusOf(String body, int items) {
+		if(!isNonEmptyString(body)) {
+			return null;
+		}
+		try (JsonReader reader = createReader(new StringReader(body))){
+			JsonValue value = reader.readValue();
+			if(value.getValueType() != ARRAY || value.asJsonArray().size() != items) {
+				return null;
+			}
+			List<StatusType> statuses = new ArrayList<>(items);
+			for(JsonValue item : value.asJsonArray()) {
+				statuses.add(statusOf(item.asJsonObject().getJsonNumber("status").intValue()));
+			}
+			return statuses;
+		} catch (RuntimeException e) {
+			// No per-item results available.
+			return null;
+		}
+	}
+	
+	void failed(WebhookInvocation invocation, Throwable e, long start) {
+		if(e instanceof HttpTimeoutException) {
+			timedOut(invocation, start);
 			return;
-		} 
-		if (isNonEmptyString(batch.getAccesskey())) {
-			call.header("Authorization", "Bearer "+batch.getAccesskey());
+		}
+		record(invocationFailed(invocation, start));
+		LOG.warning(() -> format("%s webhook invocation (%s %s) for %s (%s) failed: %s", 
+								 batch.getWebhookName(),
+								 batch.getMethod(),
+								 endpointOf(invocation),
+								 invocation.getEventName(),
+								 invocation.getEventId(),
+								 e.getMessage()));
+	}
+	
+	void timedOut(WebhookInvocation invocation, long start) {
+		record(invocationFailed(invocation, start));
+		LOG.warning(() -> format("%s: %s webhook invocation (%s %s) for %s (%s) timed out after %d ms.", 
+								 WHK0107E_WEBHOOK_INVOCATION_TIMED_OUT.getReasonCode(),
+								 batch.getWebhookName(),
+								 batch.getMethod(),
+								 endpointOf(invocation),
+								 invocation.getEventName(),
+								 invocation.getEventId(),
+								 currentTimeMillis() - start));
+	}
+	
+	void failed(List<WebhookInvocation> items, Throwable e, long start) {
+		if(e instanceof HttpTimeoutException) {
+			timedOut(items, start);
 			return;
 		}
+		record(items, item -> invocationFailed(item, start));
+		LOG.warning(() -> format("%s webhook batch invocation (%s %s) with %d message(s) failed: %s", 
+								 batch.getWebhookName(),
+								 batch.getMethod(),
+								 endpointOf(items.get(0)),
+								 items.size(),
+								 e.getMessage()));
+	}
+	
+	void timedOut(List<WebhookInvocation> items, long start) {
+		record(items, item -> invocationFailed(item, start));
+		LOG.warning(() -> format("%s: %s webhook batch invocation (%s %s) with %d message(s) timed out after %d ms.", 
+								 WHK0107E_WEBHOOK_INVOCATION_TIMED_OUT.getReasonCode(),
+								 batch.getWebhookName(),
+								 batch.getMethod(),
+								 endpointOf(items.get(0)),
+								 items.size(),
+								 currentTimeMillis() - start));
+	}
+	
+	void rejected(WebhookInvocation invocation) {
+		results.add(invocationRejected(invocation));
+		LOG.fine(() -> format("%s webhook invocation for %s (%s) rejected by open circuit breaker.", 
+							  batch.getWebhookName(),
+							  invocation.getEventName(),
+							  invocation.getEventId()));
+	}
+	
+	private void record(WebhookInvocationResult result) {
+		results.add(result);
+		loop.invocationCompleted(batch, consumePermission(), result);
+	}
+	
+	private void record(List<WebhookInvocation> items, Function<WebhookInvocation,WebhookInvocationResult> result) {
+		List<WebhookInvocationResult> settled = new ArrayList<>(items.size());
+		for(WebhookInvocation item : items) {
+			settled.add(result.apply(item));
+		}
+		record(settled, settled.get(0));
+	}
+	
+	/**
+	 * Records the results of the messages sent in a single batch request.
+	 * Every message is settled with its own result in the webhook message queue,
+	 * whereas the circuit breaker and the concurrency limit observe a single outcome per request.
+	 * @param settled the results of the sent messages
+	 * @param outcome the outcome of the request
+	 */
+	private void record(List<WebhookInvocationResult> settled, WebhookInvocationResult outcome) {
+		results.addAll(settled);
+		loop.invocationCompleted(batch, consumePermission(), outcome);
+	}
+	
+	private static Object endpointOf(WebhookInvocation invocation) {
+		try {
+			return invocation.getEndpoint();
+		} catch (RuntimeException e) {
+			// Endpoint template cannot be resolved for this domain event.
+			return "<unresolved endpoint>";
+		}
+	}
+
+	void authenticate(Builder call) {
+		if (isNonEmptyString(batch.getAuthorization())) {
+			call.header("Authorization", batch.getAuthorization());
+		}
 	}
 
-	Response invokeWebhook(Builder call, WebhookInvocation invocation) {
+	HttpResponse<String> invokeWebhook(Builder call, WebhookInvocation invocation) throws IOException, InterruptedException {
+		return client.send(newHttpRequest(call, invocation));
+	}
+	
+	HttpRequest newHttpRequest(Builder call, WebhookInvocation invocation) {
+		return newHttpRequest(call, invocation.getMessage());
+	}
+	
+	private HttpRequest newHttpRequest(Builder call, String message) {
+		BodyPublisher entity = newEntity(call, message);
 		if(batch.getMethod() == PUT) {
-			return call.put(entity(invocation.getMessage(),
-								   invocation.getContentType()));
+			return call.PUT(entity).build();
 		} 
-		return call.post(entity(invocation.getMessage(),
-								invocation.getContentType()));
+		return call.POST(entity).build();
+	}
+	
+	/**
+	 * Creates the request entity and compresses it if compression is enabled for the webhook
+	 * and the entity is not smaller than the minimum size for compression.
+	 * The compression takes place in the thread processing the batch.
+	 * @param call the request builder
+	 * @param message the message to be sent
+	 * @return the request entity publisher.
+	 */
+	BodyPublisher newEntity(Builder call, String message) {
+		WebhookCompression compression = batch.getCompression();
+		if(compression != null && compression != NONE) {
+			byte[] entity = message.getBytes(UTF_8);
+			if(entity.length >= COMPRESSION_MIN_SIZE) {
+				call.header("Content-Encoding", compression.getContentEncoding());
+				return ofByteArray(WebhookCompressor.compress(compression, entity));
+			}
+		}
+		return ofString(message);
+	}
+	
+	List<WebhookInvocationResult> getResults() {
+		return results;
+	}
+	
+	WebhookEventLoop getLoop() {
+		return loop;
+	}
+	
+	WebhookClient getClient() {
+		return client;
 	}
 	
 	WebhookBatch getBatch() {
 		return batch;
 	}
 
+	static boolean isOverloaded(StatusType status) {
+		return status.getStatusCode() == TOO_MANY_REQUESTS.getStatusCode() 
+			   || status.getStatusCode() == SERVICE_UNAVAILABLE.getStatusCode();
+	}
+	
+	/**
+	 * Returns the time to wait before sending the next request to an overloaded webhook endpoint.
+	 * The <code>Retry-After</code> header either conveys the number of seconds to wait or 
+	 * the date after which the next request can be sent.
+	 * The configured default applies if the header is missing or malformed.
+	 * @param retryAfter the <code>Retry-After</code> header value
+	 * @param now the current time in milliseconds
+	 * @return the time to wait in milliseconds.
+	 */
+	static long retryAfter(Optional<String> retryAfter, long now) {
+		if(!retryAfter.isPresent()) {
+			return RETRY_AFTER_DEFAULT;
+		}
+		String value = retryAfter.get().trim();
+		try {
+			if(value.chars().allMatch(Character::isDigit)) {
+				return min(SECONDS.toMillis(parseLong(value)), RETRY_AFTER_MAX);
+			}
+			long date = ZonedDateTime.parse(value, RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+			return min(max(0, date - now), RETRY_AFTER_MAX);
+		} catch (RuntimeException e) {
+			LOG.fine(() -> format("Malformed Retry-After header: %s", value));
+			return RETRY_AFTER_DEFAULT;
+		}
+	}
+	
+	static StatusType statusOf(int statusCode) {
+		Status status = Status.fromStatusCode(statusCode);
+		if(status != null) {
+			return status;
+		}
+		return new StatusType() {
+			
+			@Override
+			public int getStatusCode() {
+				return statusCode;
+			}
+			
+			@Override
+			public String getReasonPhrase() {
+				return "";
+			}
+			
+			@Override
+			public Family getFamily() {
+				return familyOf(statusCode);
+			}
+		};
+	}
 	
 }
-
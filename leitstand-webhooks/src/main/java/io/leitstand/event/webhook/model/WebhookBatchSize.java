@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Tunes the batch size of a single webhook by additive increase and multiplicative decrease.
+ * <p>
+ * The batch size is increased by a fixed increment when a full batch has been processed without errors 
+ * and the average invocation time is below the latency target.
+ * The batch size is halved when the failure rate of a batch exceeds the failure rate threshold
+ * or the average invocation time exceeds the latency target.
+ * The batch size never leaves the configured bounds.
+ */
+class WebhookBatchSize {
+
+	private int minSize;
+	private int maxSize;
+	private int size;
+	private final int increment;
+	private final long latencyTarget;
+	private final int failureRate;
+	
+	/**
+	 * Creates a batch size starting with the lower bound.
+	 * @param minSize the lower bound of the batch size
+	 * @param maxSize the upper bound of the batch size
+	 * @param increment the additive increment
+	 * @param latencyTarget the average invocation time threshold in milliseconds
+	 * @param failureRate the failure rate threshold in percent
+	 */
+	WebhookBatchSize(int minSize, 
+					 int maxSize, 
+					 int increment, 
+					 long latencyTarget, 
+					 int failureRate) {
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.size = minSize;
+		this.increment = increment;
+		this.latencyTarget = latencyTarget;
+		this.failureRate = failureRate;
+	}
+	
+	/**
+	 * Updates the bounds of the batch size.
+	 * @param minSize the lower bound of the batch size
+	 * @param maxSize the upper bound of the batch size
+	 */
+	synchronized void configure(int minSize, int maxSize) {
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.size = max(minSize, min(size, maxSize));
+	}
+	
+	/**
+	 * Returns the current batch size.
+	 * @return the current batch size.
+	 */
+	synchronized int get() {
+		return size;
+	}
+	
+	/**
+	 * Records the outcome of a processed batch and adjusts the batch size.
+	 * @param claimed the number of claimed messages
+	 * @param invoked the number of sent invocations
+	 * @param failed the number of failed invocations
+	 * @param execTime the total execution time of all sent invocations in milliseconds
+	 * @return the adjusted batch size.
+	 */
+	synchronized int record(int claimed, int invoked, int failed, long execTime) {
+		if(invoked == 0) {
+			// Nothing has been sent, e.g. because the circuit breaker is open.
+			return size;
+		}
+		if(failed * 100 > failureRate * invoked || execTime > latencyTarget * invoked) {
+			size = max(minSize, size / 2);
+			return size;
+		}
+		if(claimed >= size) {
+			// Grow only if the batch was full, i.e. the webhook has a backlog.
+			size = min(maxSize, size + increment);
+		}
+		return size;
+	}
+	
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static java.lang.Integer.parseInt;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Maintains a {@link WebhookBatchSize} for every webhook with adaptive batch size.
+ * <p>
+ * The event loop claims up to the current batch size of a webhook and reports the outcome of every processed batch.
+ * A fast webhook endpoint drains a backlog with fewer claim round trips,
+ * whereas a slow or failing webhook endpoint does not occupy a thread with a long series of sequential timeouts.
+ * <p>
+ * The adaptive batch sizes are maintained per node.
+ */
+@ApplicationScoped
+public class WebhookBatchSizes {
+
+	private static final int INCREMENT = parseInt(getSystemProperty("leitstand.webhook.batch.size.increment", "1"));
+	private static final long LATENCY_TARGET = parseInt(getSystemProperty("leitstand.webhook.batch.latency.target", "1000"));
+	private static final int FAILURE_RATE = parseInt(getSystemProperty("leitstand.webhook.batch.failure.rate", "0"));
+	
+	private final ConcurrentMap<Long,WebhookBatchSize> sizes = new ConcurrentHashMap<>();
+	
+	/**
+	 * Returns the number of messages to be claimed for the given webhook.
+	 * @param webhook the webhook configuration
+	 * @return the current batch size of a webhook with adaptive batch size or the configured batch size otherwise.
+	 */
+	int batchSize(WebhookConfiguration webhook) {
+		if(!webhook.isAdaptiveBatchSize()) {
+			sizes.remove(webhook.getWebhookPK());
+			return webhook.getBatchSize();
+		}
+		WebhookBatchSize size = sizes.computeIfAbsent(webhook.getWebhookPK(), 
+													  pk -> new WebhookBatchSize(webhook.getBatchSize(),
+															  					 webhook.getMaxBatchSize(),
+															  					 INCREMENT,
+															  					 LATENCY_TARGET,
+															  					 FAILURE_RATE));
+		// Apply modified batch size settings.
+		size.configure(webhook.getBatchSize(), webhook.getMaxBatchSize());
+		return size.get();
+	}
+	
+	/**
+	 * Adjusts the batch size of the given webhook to the outcome of a processed batch.
+	 * Invocations rejected by the circuit breaker or deferred by an overloaded webhook endpoint 
+	 * do not count as sent invocations, but an overload response counts as failure.
+	 * @param batch the processed batch
+	 * @param results the invocation results
+	 */
+	void record(WebhookBatch batch, List<WebhookInvocationResult> results) {
+		WebhookBatchSize size = sizes.get(batch.getWebhookPK());
+		if(size == null) {
+			return;
+		}
+		int invoked = 0;
+		int failed = 0;
+		long execTime = 0;
+		for(WebhookInvocationResult result : results) {
+			if(result.getExecTime() == null) {
+				continue;
+			}
+			invoked++;
+			execTime += result.getExecTime();
+			if(!result.isSucceeded()) {
+				failed++;
+			}
+		}
+		size.record(batch.getWebhookInvocations().size(), 
+					invoked, 
+					failed, 
+					execTime);
+	}
+	
+	/**
+	 * Returns the effective batch size of the given webhook.
+	 * @param webhook the webhook
+	 * @return the current batch size of a webhook with adaptive batch size or the configured batch size otherwise.
+	 */
+	public int getBatchSize(Webhook webhook) {
+		WebhookBatchSize size = sizes.get(webhook.getId());
+		if(size == null) {
+			return webhook.getBatchSize();
+		}
+		return size.get();
+	}
+	
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.event.webhook.service.CircuitBreakerState.CLOSED;
+import static io.leitstand.event.webhook.service.CircuitBreakerState.HALF_OPEN;
+import static io.leitstand.event.webhook.service.CircuitBreakerState.OPEN;
+
+import io.leitstand.event.webhook.service.CircuitBreakerState;
+
+/**
+ * Circuit breaker of a single webhook.
+ * <p>
+ * The circuit breaker records the outcome of the last invocations in a sliding window.
+ * An invocation is considered bad if it failed or took longer than the slow call threshold.
+ * The circuit breaker opens when the share of bad invocations reaches the failure rate threshold,
+ * and rejects all invocations until the open duration has elapsed.
+ * The circuit breaker then becomes half-open and admits a limited number of probe invocations.
+ * A successful probe closes the circuit breaker, a bad probe opens it again.
+ * <p>
+ * The circuit breaker counts the consecutive trips without recovery, 
+ * which allows disabling a webhook whose endpoint does not recover.
+ * <p>
+ * Every permission is a permit that identifies the circuit breaker state in which the permission was granted.
+ * Only outcomes of invocations permitted in the current state are recorded,
+ * such that a late response of an invocation sent before the circuit breaker tripped 
+ * is not mistaken for the outcome of a probe invocation.
+ */
+class WebhookCircuitBreaker {
+
+	/**
+	 * Permit of a rejected invocation.
+	 */
+	static final long REJECTED = -1L;
+
+	private final int minCalls;
+	private final int failureRate;
+	private final long slowCallThreshold;
+	private final long openDuration;
+	private final int probes;
+	
+	private final boolean[] window;
+	private int calls;
+	private int badCalls;
+	private int next;
+	
+	private CircuitBreakerState state = CLOSED;
+	private long openUntil;
+	private int probesInFlight;
+	private int trips;
+	private long generation;
+	
+	/**
+	 * Creates a closed circuit breaker.
+	 * @param windowSize the number of invocations in the sliding window
+	 * @param minCalls the minimum number of recorded invocations to evaluate the failure rate
+	 * @param failureRate the failure rate threshold in percent
+	 * @param slowCallThreshold the slow call threshold in milliseconds
+	 * @param openDuration the open duration in milliseconds
+	 * @param probes the number of probe invocations in half-open state
+	 */
+	WebhookCircuitBreaker(int windowSize,
+						  int minCalls,
+						  int failureRate,
+						  long slowCallThreshold,
+						  long openDuration,
+						  int probes) {
+		this.window = new boolean[windowSize];
+		this.minCalls = minCalls;
+		this.failureRate = failureRate;
+		this.slowCallThreshold = slowCallThreshold;
+		this.openDuration = openDuration;
+		this.probes = probes;
+	}
+	
+	/**
+	 * Returns whether the circuit breaker is open and rejects all invocations.
+	 * @param now the current time in milliseconds
+	 * @return <code>true</code> if the circuit breaker is open, <code>false</code> if not.
+	 */
+	synchronized boolean isOpen(long now) {
+		return state == OPEN && now < openUntil;
+	}
+	
+	/**
+	 * Returns whether the circuit breaker rejects the next invocation,
+	 * because the circuit breaker is open or all probe invocations of the half-open circuit breaker are in flight.
+	 * @param now the current time in milliseconds
+	 * @return <code>true</code> if the next invocation is rejected, <code>false</code> if not.
+	 */
+	synchronized boolean isRejecting(long now) {
+		if(state == OPEN) {
+			return now < openUntil;
+		}
+		return state == HALF_OPEN && probesInFlight >= probes;
+	}
+	
+	/**
+	 * Requests the permission to send an invocation.
+	 * An open circuit breaker becomes half-open when the open duration has elapsed.
+	 * @param now the current time in milliseconds
+	 * @return the permit of the invocation or {@link #REJECTED} if the invocation is rejected.
+	 */
+	synchronized long tryAcquirePermission(long now) {
+		if(state == OPEN) {
+			if(now < openUntil) {
+				return REJECTED;
+			}
+			state = HALF_OPEN;
+			probesInFlight = 0;
+			generation++;
+		}
+		if(state == HALF_OPEN) {
+			if(probesInFlight >= probes) {
+				return REJECTED;
+			}
+			probesInFlight++;
+		}
+		return generation;
+	}
+	
+	/**
+	 * Records the outcome of an invocation.
+	 * The outcome is discarded if the circuit breaker changed its state after the invocation was permitted.
+	 * @param permit the permit of the invocation
+	 * @param succeeded whether the invocation succeeded
+	 * @param execTime the invocation execution time in milliseconds
+	 * @param now the current time in milliseconds
+	 * @return the new state if the invocation changed the circuit breaker state, <code>null</code> otherwise.
+	 */
+	synchronized CircuitBreakerState record(long permit, boolean succeeded, long execTime, long now) {
+		if(permit != generation) {
+			// Outcome of an invocation permitted before the last state change.
+			return null;
+		}
+		boolean bad = !succeeded || execTime > slowCallThreshold;
+		if(state == HALF_OPEN) {
+			if(bad) {
+				trip(now);
+				return OPEN;
+			}
+			close();
+			return CLOSED;
+		}
+		
+		if(calls == window.length) {
+			if(window[next]) {
+				badCalls--;
+			}
+		} else {
+			calls++;
+		}
+		window[next] = bad;
+		if(bad) {
+			badCalls++;
+		}
+		next = (next + 1) % window.length;
+		
+		if(calls >= minCalls && 100 * badCalls >= failureRate * calls) {
+			trip(now);
+			return OPEN;
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the permission of an invocation without recorded outcome, e.g. because the invocation was interrupted.
+	 * A half-open circuit breaker admits another probe invocation.
+	 * @param permit the permit of the invocation
+	 */
+	synchronized void release(long permit) {
+		if(state == HALF_OPEN && permit == generation) {
+			probesInFlight = Math.max(0, probesInFlight-1);
+		}
+	}
+	
+	private void trip(long now) {
+		state = OPEN;
+		openUntil = now + openDuration;
+		trips++;
+		generation++;
+		reset();
+	}
+	
+	private void close() {
+		state = CLOSED;
+		trips = 0;
+		generation++;
+		reset();
+	}
+	
+	private void reset() {
+		calls = 0;
+		badCalls = 0;
+		next = 0;
+		probesInFlight = 0;
+	}
+	
+	/**
+	 * Returns the current circuit breaker state.
+	 * An open circuit breaker is reported as half-open as soon as the open duration has elapsed.
+	 * @param now the current time in milliseconds
+	 * @return the circuit breaker state.
+	 */
+	synchronized CircuitBreakerState getState(long now) {
+		if(state == OPEN && now >= openUntil) {
+			return HALF_OPEN;
+		}
+		return state;
+	}
+	
+	/**
+	 * Returns the number of consecutive trips without recovery.
+	 * @return the number of consecutive trips.
+	 */
+	synchronized int getTrips() {
+		return trips;
+	}
+	
+}
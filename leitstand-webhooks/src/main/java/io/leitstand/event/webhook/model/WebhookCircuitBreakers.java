@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static io.leitstand.event.webhook.service.CircuitBreakerState.CLOSED;
+import static io.leitstand.event.webhook.service.CircuitBreakerState.OPEN;
+import static io.leitstand.event.webhook.service.ReasonCode.WHK0104E_WEBHOOK_CIRCUIT_BREAKER_OPENED;
+import static io.leitstand.event.webhook.service.ReasonCode.WHK0105I_WEBHOOK_CIRCUIT_BREAKER_CLOSED;
+import static io.leitstand.event.webhook.service.ReasonCode.WHK0106E_WEBHOOK_DISABLED_BY_CIRCUIT_BREAKER;
+import static io.leitstand.event.webhook.service.WebhookErrorPolicy.DISABLE;
+import static java.lang.Integer.parseInt;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.FINE;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import io.leitstand.event.webhook.service.CircuitBreakerState;
+import io.leitstand.event.webhook.service.WebhookService;
+
+/**
+ * Maintains a {@link WebhookCircuitBreaker} for every webhook.
+ * <p>
+ * The event loop does not claim messages for a webhook with an open circuit breaker or with exhausted probe invocations,
+ * such that a failing webhook endpoint does not consume the batch execution credits needed by healthy webhooks.
+ * The batch processors reject invocations while the circuit breaker is open and return the messages to the queue.
+ * <p>
+ * A webhook with the {@link io.leitstand.event.webhook.service.WebhookErrorPolicy#DISABLE DISABLE} error policy
+ * is disabled when its circuit breaker trips repeatedly without recovering in between.
+ * <p>
+ * The circuit breakers are maintained per node.
+ */
+@ApplicationScoped
+public class WebhookCircuitBreakers {
+
+	private static final Logger LOG = Logger.getLogger(WebhookCircuitBreakers.class.getName());
+	private static final int WINDOW_SIZE = parseInt(getSystemProperty("leitstand.webhook.breaker.window", "20"));
+	private static final int MIN_CALLS = parseInt(getSystemProperty("leitstand.webhook.breaker.min.calls", "10"));
+	private static final int FAILURE_RATE = parseInt(getSystemProperty("leitstand.webhook.breaker.failure.rate", "50"));
+	private static final long SLOW_CALL_THRESHOLD = parseInt(getSystemProperty("leitstand.webhook.breaker.slow.call.threshold", "10000"));
+	private static final long OPEN_DURATION = SECONDS.toMillis(parseInt(getSystemProperty("leitstand.webhook.breaker.open.duration", "30")));
+	private static final int PROBES = parseInt(getSystemProperty("leitstand.webhook.breaker.probes", "1"));
+	private static final int MAX_TRIPS = parseInt(getSystemProperty("leitstand.webhook.breaker.max.trips", "3"));
+	
+	@Inject
+	private WebhookService webhooks;
+	
+	private final ConcurrentMap<Long,WebhookCircuitBreaker> breakers = new ConcurrentHashMap<>();
+	
+	protected WebhookCircuitBreakers() {
+		// CDI
+	}
+	
+	WebhookCircuitBreakers(WebhookService webhooks) {
+		this.webhooks = webhooks;
+	}
+	
+	private WebhookCircuitBreaker breaker(Long webhookPK) {
+		return breakers.computeIfAbsent(webhookPK, 
+										pk -> new WebhookCircuitBreaker(WINDOW_SIZE, 
+																		MIN_CALLS, 
+																		FAILURE_RATE, 
+																		SLOW_CALL_THRESHOLD, 
+																		OPEN_DURATION, 
+																		PROBES));
+	}
+	
+	/**
+	 * Returns whether the circuit breaker of the given webhook rejects the next invocation,
+	 * because the circuit breaker is open or all probe invocations of the half-open circuit breaker are in flight.
+	 * @param webhookPK the webhook primary key
+	 * @return <code>true</code> if the circuit breaker rejects the next invocation, <code>false</code> if not.
+	 */
+	boolean isRejecting(Long webhookPK) {
+		WebhookCircuitBreaker breaker = breakers.get(webhookPK);
+		return breaker != null && breaker.isRejecting(currentTimeMillis());
+	}
+	
+	/**
+	 * Requests the permission to send the next invocation of the given batch.
+	 * @param batch the webhook batch
+	 * @return the permit of the invocation or {@link WebhookCircuitBreaker#REJECTED} if the invocation is rejected.
+	 */
+	long tryAcquirePermission(WebhookBatch batch) {
+		return breaker(batch.getWebhookPK()).tryAcquirePermission(currentTimeMillis());
+	}
+	
+	/**
+	 * Returns the permission of an invocation of the given batch without recorded outcome.
+	 * @param batch the webhook batch
+	 * @param permit the permit of the invocation
+	 */
+	void release(WebhookBatch batch, long permit) {
+		WebhookCircuitBreaker breaker = breakers.get(batch.getWebhookPK());
+		if(breaker != null) {
+			breaker.release(permit);
+		}
+	}
+	
+	/**
+	 * Records the outcome of a webhook invocation.
+	 * Disables the webhook if the circuit breaker tripped repeatedly and the webhook error policy is set to <code>DISABLE</code>.
+	 * @param batch the webhook batch
+	 * @param permit the permit of the invocation
+	 * @param result the invocation result
+	 */
+	void record(WebhookBatch batch, long permit, WebhookInvocationResult result) {
+		if(result.isRejected()) {
+			return;
+		}
+		WebhookCircuitBreaker breaker = breaker(batch.getWebhookPK());
+		CircuitBreakerState state = breaker.record(permit,
+												   result.isSucceeded(), 
+												   result.getExecTime(), 
+												   currentTimeMillis());
+		if(state == CLOSED) {
+			LOG.info(() -> format("%s: Circuit breaker of webhook %s closed.",
+								  WHK0105I_WEBHOOK_CIRCUIT_BREAKER_CLOSED.getReasonCode(),
+								  batch.getWebhookName()));
+			return;
+		}
+		if(state == OPEN) {
+			int trips = breaker.getTrips();
+			LOG.warning(() -> format("%s: Circuit breaker of webhook %s opened (%d consecutive trip(s)).",
+									 WHK0104E_WEBHOOK_CIRCUIT_BREAKER_OPENED.getReasonCode(),
+									 batch.getWebhookName(),
+									 trips));
+			if(batch.getErrorPolicy() == DISABLE && trips >= MAX_TRIPS) {
+				disable(batch, trips);
+			}
+		}
+	}
+	
+	private void disable(WebhookBatch batch, int trips) {
+		try {
+			webhooks.disableWebhook(batch.getWebhookId());
+			LOG.severe(() -> format("%s: Webhook %s disabled because the circuit breaker tripped %d times in a row.",
+									WHK0106E_WEBHOOK_DISABLED_BY_CIRCUIT_BREAKER.getReasonCode(),
+									batch.getWebhookName(),
+									trips));
+		} catch (Exception e) {
+			LOG.warning(() -> format("Failed to disable webhook %s: %s",
+									 batch.getWebhookName(),
+									 e.getMessage()));
+			LOG.log(FINE,e.getMessage(),e);
+		}
+	}
+	
+	/**
+	 * Returns the circuit breaker state of the given webhook.
+	 * @param webhookPK the webhook primary key
+	 * @return the circuit breaker state.
+	 */
+	public CircuitBreakerState getCircuitBreakerState(Long webhookPK) {
+		WebhookCircuitBreaker breaker = breakers.get(webhookPK);
+		if(breaker == null) {
+			return CLOSED;
+		}
+		return breaker.getState(currentTimeMillis());
+	}
+	
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static java.lang.System.currentTimeMillis;
+import static java.net.http.HttpResponse.BodyHandlers.ofString;
+import static java.util.logging.Level.FINER;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+/**
+ * A pooled HTTP client to invoke a webhook endpoint.
+ * <p>
+ * The client limits the number of concurrent requests per target host and
+ * always reads the complete response, such that the connection can be reused for subsequent requests.
+ * @see WebhookClientPool
+ */
+public class WebhookClient {
+
+	private static final Logger LOG = Logger.getLogger(WebhookClient.class.getName());
+	
+	private final WebhookClientPool pool;
+	private final HttpClient client;
+	private final int connectTimeout;
+	private long lastUsed;
+	private int activeRequests;
+	
+	WebhookClient(WebhookClientPool pool, HttpClient client, int connectTimeout) {
+		this.pool = pool;
+		this.client = client;
+		this.connectTimeout = connectTimeout;
+		this.lastUsed = currentTimeMillis();
+	}
+	
+	/**
+	 * Sends the given request and returns the response.
+	 * @param request the HTTP request
+	 * @return the HTTP response.
+	 * @throws IOException if an I/O error occurs while sending the request or receiving the response
+	 * @throws InterruptedException if the request was interrupted
+	 */
+	public HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+		WebhookRequestPermits permits = pool.getRequestPermits(request.uri());
+		begin();
+		try {
+			permits.acquire();
+			try {
+				return client.send(request, ofString());
+			} finally {
+				permits.release();
+			}
+		} finally {
+			end();
+		}
+	}
+	
+	/**
+	 * Sends the given request asynchronously.
+	 * The calling thread neither waits for a free request permit of the target host nor for the response.
+	 * A request waiting for a permit is sent as soon as another request to the same host has been completed.
+	 * <p>
+	 * Completing the returned future before the response has been received 
+	 * cancels the request and returns the request permit immediately.
+	 * @param request the HTTP request
+	 * @return the future HTTP response.
+	 */
+	public CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest request) {
+		WebhookRequestPermits permits = pool.getRequestPermits(request.uri());
+		CompletableFuture<HttpResponse<String>> response = new CompletableFuture<>();
+		begin();
+		CompletableFuture<Void> permit = permits.acquireAsync();
+		// Withdraw a waiting request when the response is completed early, e.g. by the watchdog.
+		response.whenComplete((r,e) -> permit.cancel(false));
+		permit.whenComplete((p,cancelled) -> {
+			if(cancelled != null) {
+				end();
+				return;
+			}
+			if(response.isDone()) {
+				permits.release();
+				end();
+				return;
+			}
+			try {
+				CompletableFuture<HttpResponse<String>> exchange = client.sendAsync(request, ofString());
+				exchange.whenComplete((r,e) -> {
+					if(e != null) {
+						response.completeExceptionally(e);
+					} else {
+						response.complete(r);
+					}
+				});
+				response.whenComplete((r,e) -> {
+					permits.release();
+					end();
+					exchange.cancel(true);
+				});
+			} catch (RuntimeException e) {
+				permits.release();
+				end();
+				response.completeExceptionally(e);
+			}
+		});
+		return response;
+	}
+	
+	private synchronized void begin() {
+		activeRequests++;
+	}
+	
+	private synchronized void end() {
+		activeRequests--;
+		lastUsed = currentTimeMillis();
+	}
+	
+	/**
+	 * Returns the connect timeout of this client in milliseconds.
+	 * @return the connect timeout or <code>0</code> if no connect timeout is set.
+	 */
+	int getConnectTimeout() {
+		return connectTimeout;
+	}
+	
+	synchronized void touch() {
+		lastUsed = currentTimeMillis();
+	}
+	
+	synchronized boolean isIdle(long now, long idleTimeoutMillis) {
+		return activeRequests == 0 && now - lastUsed > idleTimeoutMillis;
+	}
+	
+	/**
+	 * Closes the HTTP client and all its keep-alive connections.
+	 * HTTP clients are closeable as of JDK 21. 
+	 * Older JDKs close the connections of an unused client when the keep-alive timeout expires.
+	 */
+	void close() {
+		if(client instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) client).close();
+			} catch (Exception e) {
+				LOG.fine(() -> "Failed to close HTTP client: "+e.getMessage());
+				LOG.log(FINER,e.getMessage(),e);
+			}
+		}
+	}
+	
+}
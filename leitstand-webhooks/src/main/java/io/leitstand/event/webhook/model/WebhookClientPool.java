@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static io.leitstand.event.webhook.model.WebhookConcurrencyLimits.defaultNodeLimit;
+import static java.lang.Integer.parseInt;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.net.http.HttpClient.Version.HTTP_1_1;
+import static java.time.Duration.ofMillis;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Manages the HTTP clients to invoke the webhook endpoints.
+ * <p>
+ * Every webhook has its own HTTP client. 
+ * An HTTP client maintains a pool of keep-alive connections to the webhook endpoint,
+ * such that subsequent invocations reuse the existing connections instead of establishing a new connection for each invocation.
+ * The <code>leitstand.webhook.client.max.requests.per.host</code> system property limits the number of concurrent requests to the same host
+ * across all webhooks (default: 10 requests).
+ * The pool evicts and closes HTTP clients that were not used for the time span set by the <code>leitstand.webhook.client.idle.timeout</code> system property 
+ * (default: 300 seconds).
+ * A client replaced because of a modified connect timeout is closed as soon as it has been idle for the same time span.
+ * HTTP clients can be closed as of JDK 21. Older JDKs close the connections of a discarded client when the keep-alive timeout expires.
+ * Idle connections of a client are closed after the keep-alive timeout set by the <code>jdk.httpclient.keepalive.timeout</code> system property.
+ */
+@ApplicationScoped
+public class WebhookClientPool {
+	
+	private static final Logger LOG = Logger.getLogger(WebhookClientPool.class.getName());
+	private static final int MAX_REQUESTS_PER_HOST = parseInt(getSystemProperty("leitstand.webhook.client.max.requests.per.host", defaultNodeLimit(10)));
+	private static final int IDLE_TIMEOUT = parseInt(getSystemProperty("leitstand.webhook.client.idle.timeout", "300"));
+
+	@Resource
+	private ManagedExecutorService wm;
+	
+	private int maxRequestsPerHost = MAX_REQUESTS_PER_HOST;
+	private long idleTimeoutMillis = SECONDS.toMillis(IDLE_TIMEOUT);
+	private final ConcurrentMap<Long,WebhookClient> clients = new ConcurrentHashMap<>();
+	private final Set<WebhookClient> retired = ConcurrentHashMap.newKeySet();
+	private final ConcurrentMap<String,WebhookRequestPermits> hosts = new ConcurrentHashMap<>();
+	
+	protected WebhookClientPool() {
+		// CDI
+	}
+	
+	WebhookClientPool(ManagedExecutorService wm, 
+					  int maxRequestsPerHost, 
+					  long idleTimeoutMillis) {
+		this.wm = wm;
+		this.maxRequestsPerHost = maxRequestsPerHost;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+	
+	/**
+	 * Returns the HTTP client for the webhook of the given batch.
+	 * Creates a new HTTP client if no client exists for the webhook, if the existing client has been evicted 
+	 * or if the connect timeout of the webhook has been modified.
+	 * @param batch the webhook batch
+	 * @return the HTTP client to invoke the webhook endpoint.
+	 */
+	public WebhookClient getClient(WebhookBatch batch) {
+		evictIdleClients();
+		return clients.compute(batch.getWebhookPK(), 
+							   (pk, client) -> {
+								   if(client != null && client.getConnectTimeout() == batch.getConnectTimeout()) {
+									   client.touch();
+									   return client;
+								   }
+								   if(client != null) {
+									   // Batches in progress might still use the replaced client.
+									   retired.add(client);
+								   }
+								   return new WebhookClient(this,
+										   					newHttpClient(batch.getConnectTimeout()),
+										   					batch.getConnectTimeout());
+							   });
+	}
+	
+	HttpClient newHttpClient(int connectTimeout) {
+		HttpClient.Builder client = HttpClient.newBuilder()
+											  .version(HTTP_1_1);
+		if(connectTimeout > 0) {
+			client.connectTimeout(ofMillis(connectTimeout));
+		}
+		if(wm != null) {
+			client.executor(wm);
+		}
+		return client.build();
+	}
+	
+	/**
+	 * Returns the permits to send a request to the host of the given URI.
+	 * @param uri the request URI
+	 * @return the request permits of the target host.
+	 */
+	WebhookRequestPermits getRequestPermits(URI uri) {
+		return hosts.computeIfAbsent(format("%s://%s",uri.getScheme(),uri.getAuthority()), 
+									 host -> new WebhookRequestPermits(maxRequestsPerHost));
+	}
+	
+	void evictIdleClients() {
+		long now = currentTimeMillis();
+		for(Long webhookPK : clients.keySet()) {
+			// Evict atomically to not close a client that is handed out concurrently.
+			clients.computeIfPresent(webhookPK, (pk, client) -> {
+				if(client.isIdle(now, idleTimeoutMillis)) {
+					LOG.fine(() -> format("Evict idle HTTP client of webhook %d.", pk));
+					client.close();
+					return null;
+				}
+				return client;
+			});
+		}
+		retired.removeIf(client -> {
+			if(client.isIdle(now, idleTimeoutMillis)) {
+				client.close();
+				return true;
+			}
+			return false;
+		});
+	}
+	
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static io.leitstand.event.webhook.service.WebhookCompression.DEFLATE;
+import static io.leitstand.event.webhook.service.WebhookCompression.GZIP;
+import static java.lang.Integer.parseInt;
+import static java.util.zip.Deflater.DEFAULT_COMPRESSION;
+
+import java.io.ByteArrayOutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import io.leitstand.event.webhook.service.WebhookCompression;
+
+/**
+ * Compresses webhook request entities.
+ * <p>
+ * Compressors are pooled per compression algorithm, 
+ * such that the deflater and the output buffers are reused instead of being allocated for every request.
+ * The <code>leitstand.webhook.compression.pool.size</code> system property limits the number of pooled compressors 
+ * per algorithm (default: 16 compressors).
+ * The <code>leitstand.webhook.compression.level</code> system property sets the compression level.
+ */
+class WebhookCompressor {
+
+	private static final int POOL_SIZE = parseInt(getSystemProperty("leitstand.webhook.compression.pool.size", "16"));
+	private static final int LEVEL = parseInt(getSystemProperty("leitstand.webhook.compression.level", String.valueOf(DEFAULT_COMPRESSION)));
+	private static final int BUFFER_SIZE = 8192;
+	private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+	private static final Map<WebhookCompression,BlockingQueue<WebhookCompressor>> POOL = new EnumMap<>(WebhookCompression.class);
+	
+	static {
+		POOL.put(GZIP, new ArrayBlockingQueue<>(POOL_SIZE));
+		POOL.put(DEFLATE, new ArrayBlockingQueue<>(POOL_SIZE));
+	}
+	
+	/**
+	 * Compresses the given request entity.
+	 * @param compression the compression algorithm
+	 * @param entity the request entity
+	 * @return the compressed request entity.
+	 */
+	static byte[] compress(WebhookCompression compression, byte[] entity) {
+		BlockingQueue<WebhookCompressor> pool = POOL.get(compression);
+		WebhookCompressor compressor = pool.poll();
+		if(compressor == null) {
+			compressor = new WebhookCompressor(compression);
+		}
+		try {
+			return compressor.deflate(entity);
+		} finally {
+			if(!pool.offer(compressor)) {
+				// Pool is exhausted. Release the native resources immediately.
+				compressor.end();
+			}
+		}
+	}
+	
+	private final boolean gzip;
+	private final Deflater deflater;
+	private final CRC32 crc = new CRC32();
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+	
+	private WebhookCompressor(WebhookCompression compression) {
+		this.gzip = compression == GZIP;
+		// gzip wraps raw deflate data with its own header and trailer.
+		this.deflater = new Deflater(LEVEL, gzip);
+	}
+	
+	private byte[] deflate(byte[] entity) {
+		deflater.reset();
+		out.reset();
+		if(gzip) {
+			out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+		}
+		deflater.setInput(entity);
+		deflater.finish();
+		while(!deflater.finished()) {
+			int length = deflater.deflate(buffer);
+			out.write(buffer, 0, length);
+		}
+		if(gzip) {
+			crc.reset();
+			crc.update(entity, 0, entity.length);
+			writeInt((int) crc.getValue());
+			writeInt(entity.length);
+		}
+		return out.toByteArray();
+	}
+	
+	private void writeInt(int value) {
+		// gzip trailer fields are stored in little-endian byte order.
+		out.write(value & 0xff);
+		out.write((value >> 8) & 0xff);
+		out.write((value >> 16) & 0xff);
+		out.write((value >> 24) & 0xff);
+	}
+	
+	private void end() {
+		deflater.end();
+	}
+	
+}
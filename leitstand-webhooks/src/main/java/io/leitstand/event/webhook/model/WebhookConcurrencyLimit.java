@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+/**
+ * Discovers the number of batches a single webhook endpoint can process concurrently from the invocation latency.
+ * <p>
+ * The limit compares a short-term average of the invocation time with a long-term baseline.
+ * The limit grows while the short-term average stays within the tolerated deviation from the baseline,
+ * and shrinks proportionally to the gradient when the webhook endpoint slows down, i.e. when requests are queued by the endpoint.
+ * A failed invocation reduces the limit by a fixed ratio.
+ * The limit is not increased while the webhook does not use at least half of the current limit.
+ */
+class WebhookConcurrencyLimit {
+
+	private static final double SHORT_SMOOTHING = 0.2;
+	private static final double LONG_SMOOTHING = 0.02;
+	private static final double LIMIT_SMOOTHING = 0.2;
+	private static final double TOLERANCE = 1.5;
+	private static final double BACKOFF_RATIO = 0.9;
+	
+	private final int minLimit;
+	private final int maxLimit;
+	private double limit;
+	private double shortRtt;
+	private double longRtt;
+	
+	/**
+	 * Creates a concurrency limit starting with the lower bound.
+	 * @param minLimit the lower bound of the concurrency limit
+	 * @param maxLimit the upper bound of the concurrency limit
+	 */
+	WebhookConcurrencyLimit(int minLimit, int maxLimit) {
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = minLimit;
+	}
+	
+	/**
+	 * Returns the current concurrency limit.
+	 * @return the current concurrency limit.
+	 */
+	synchronized int get() {
+		return (int) limit;
+	}
+	
+	/**
+	 * Records the outcome of a webhook invocation and adjusts the concurrency limit.
+	 * @param execTime the invocation execution time in milliseconds
+	 * @param failed whether the invocation failed
+	 * @param inflight the number of batches in progress
+	 * @return the adjusted concurrency limit.
+	 */
+	synchronized int record(long execTime, boolean failed, int inflight) {
+		if(failed) {
+			limit = max(minLimit, limit * BACKOFF_RATIO);
+			return get();
+		}
+		double rtt = max(1, execTime);
+		shortRtt = shortRtt == 0 ? rtt : shortRtt + (rtt - shortRtt) * SHORT_SMOOTHING;
+		longRtt  = longRtt  == 0 ? rtt : longRtt  + (rtt - longRtt)  * LONG_SMOOTHING;
+		if(longRtt / shortRtt > 2) {
+			// Let the baseline recover quickly after a latency spike.
+			longRtt *= 0.95;
+		}
+		if(inflight < limit / 2) {
+			// The webhook does not use its limit. Latency tells nothing about a higher limit.
+			return get();
+		}
+		double gradient = max(0.5, min(1.0, TOLERANCE * longRtt / shortRtt));
+		double newLimit = limit * gradient + sqrt(limit);
+		limit = limit * (1 - LIMIT_SMOOTHING) + newLimit * LIMIT_SMOOTHING;
+		limit = max(minLimit, min(maxLimit, limit));
+		return get();
+	}
+	
+}
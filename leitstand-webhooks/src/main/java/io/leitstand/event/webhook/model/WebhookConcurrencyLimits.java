@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static java.lang.Integer.parseInt;
+import static java.lang.Math.max;
+import static java.lang.String.format;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Maintains a {@link WebhookConcurrencyLimit} for every webhook.
+ * <p>
+ * The concurrency limit of a webhook states how many batches of the webhook can be in progress at the same time.
+ * The invocations of a batch are sent one after another, 
+ * i.e. the concurrency limit equals the number of parallel requests sent to the webhook endpoint.
+ * <p>
+ * The concurrency limits are maintained per node.
+ */
+@ApplicationScoped
+public class WebhookConcurrencyLimits {
+
+	private static final Logger LOG = Logger.getLogger(WebhookConcurrencyLimits.class.getName());
+	static final boolean ADAPTIVE_CONCURRENCY = "adaptive".equalsIgnoreCase(getSystemProperty("leitstand.webhook.concurrency.mode", "fixed"));
+	private static final int MIN_LIMIT = parseInt(getSystemProperty("leitstand.webhook.concurrency.min", "1"));
+	private static final int MAX_LIMIT = parseInt(getSystemProperty("leitstand.webhook.concurrency.max", "50"));
+	
+	/**
+	 * Returns the default of a node-wide limit that must not cap the adaptive concurrency limits.
+	 * In adaptive mode, the default is raised to the upper bound of the adaptive concurrency limit,
+	 * such that a single webhook can reach its upper bound.
+	 * @param fixed the default in fixed concurrency mode
+	 * @return the default of the node-wide limit.
+	 */
+	static String defaultNodeLimit(int fixed) {
+		if(ADAPTIVE_CONCURRENCY) {
+			return String.valueOf(max(fixed, MAX_LIMIT));
+		}
+		return String.valueOf(fixed);
+	}
+	
+	private final ConcurrentMap<Long,WebhookConcurrencyLimit> limits = new ConcurrentHashMap<>();
+	
+	private WebhookConcurrencyLimit limit(Long webhookPK) {
+		return limits.computeIfAbsent(webhookPK, 
+									  pk -> new WebhookConcurrencyLimit(MIN_LIMIT, MAX_LIMIT));
+	}
+	
+	/**
+	 * Returns the number of batches the given webhook can have in progress.
+	 * @param webhookPK the webhook primary key
+	 * @return the current concurrency limit.
+	 */
+	int getLimit(Long webhookPK) {
+		return limit(webhookPK).get();
+	}
+	
+	/**
+	 * Adjusts the concurrency limit of a webhook to the outcome of a webhook invocation.
+	 * Invocations rejected by the circuit breaker are ignored.
+	 * An overload response counts as failure.
+	 * @param batch the webhook batch
+	 * @param result the invocation result
+	 * @param inflight the number of batches of the webhook in progress
+	 */
+	void record(WebhookBatch batch, WebhookInvocationResult result, int inflight) {
+		if(result.getExecTime() == null) {
+			return;
+		}
+		WebhookConcurrencyLimit limit = limit(batch.getWebhookPK());
+		int before = limit.get();
+		int after = limit.record(result.getExecTime(), 
+								 !result.isSucceeded(), 
+								 inflight);
+		if(before != after) {
+			LOG.fine(() -> format("Concurrency limit of webhook %s changed from %d to %d.",
+								  batch.getWebhookName(),
+								  before,
+								  after));
+		}
+	}
+	
+}
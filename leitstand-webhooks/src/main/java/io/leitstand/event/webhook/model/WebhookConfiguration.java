@@ -0,0 +1,338 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static io.leitstand.commons.model.ByteArrayUtil.encodeBase64String;
+import static io.leitstand.commons.model.StringUtil.isNonEmptyString;
+import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
+import static java.lang.Integer.parseInt;
+
+import javax.security.enterprise.credential.Password;
+
+import io.leitstand.event.queue.service.TopicName;
+import io.leitstand.event.webhook.service.Endpoint;
+import io.leitstand.event.webhook.service.WebhookCompression;
+import io.leitstand.event.webhook.service.WebhookDeliveryMode;
+import io.leitstand.event.webhook.service.WebhookErrorPolicy;
+import io.leitstand.event.webhook.service.WebhookId;
+import io.leitstand.event.webhook.service.WebhookName;
+import io.leitstand.event.webhook.service.WebhookSettings.HttpMethod;
+import io.leitstand.security.auth.UserName;
+
+/**
+ * Immutable configuration of an enabled webhook.
+ * <p>
+ * The configuration contains the decrypted credentials and the <code>Authorization</code> header value 
+ * to avoid decrypting the credentials for every webhook batch.
+ * @see WebhookRegistry
+ */
+public class WebhookConfiguration {
+	
+	private static final int CONNECT_TIMEOUT = parseInt(getSystemProperty("leitstand.webhook.connect.timeout", "10000"));
+	private static final int READ_TIMEOUT = parseInt(getSystemProperty("leitstand.webhook.read.timeout", "30000"));
+	private static final int CALL_TIMEOUT = parseInt(getSystemProperty("leitstand.webhook.call.timeout", "60000"));
+
+	static Builder newWebhookConfiguration() {
+		return new Builder();
+	}
+	
+	static class Builder {
+		private WebhookConfiguration webhook = new WebhookConfiguration();
+		
+		public Builder withWebhookPK(Long webhookPK) {
+			webhook.webhookPK = webhookPK;
+			return this;
+		}
+		
+		public Builder withWebhookId(WebhookId webhookId) {
+			webhook.webhookId = webhookId;
+			return this;
+		}
+		
+		public Builder withWebhookName(WebhookName webhookName) {
+			webhook.webhookName = webhookName;
+			return this;
+		}
+		
+		public Builder withTopicName(TopicName topicName) {
+			webhook.topicName = topicName;
+			return this;
+		}
+		
+		public Builder withEndpoint(Endpoint endpoint) {
+			webhook.endpoint = endpoint;
+			return this;
+		}
+		
+		public Builder withEndpointTemplate(EndpointTemplate endpointTemplate) {
+			webhook.endpointTemplate = endpointTemplate;
+			return this;
+		}
+		
+		public Builder withHttpMethod(HttpMethod method) {
+			webhook.method = method;
+			return this;
+		}
+		
+		public Builder withBatchSize(int batchSize) {
+			webhook.batchSize = batchSize;
+			return this;
+		}
+		
+		public Builder withMaxBatchSize(Integer maxBatchSize) {
+			webhook.maxBatchSize = maxBatchSize;
+			return this;
+		}
+		
+		public Builder withDeliveryMode(WebhookDeliveryMode deliveryMode) {
+			webhook.deliveryMode = deliveryMode;
+			return this;
+		}
+		
+		public Builder withCompression(WebhookCompression compression) {
+			webhook.compression = compression;
+			return this;
+		}
+		
+		public Builder withErrorPolicy(WebhookErrorPolicy errorPolicy) {
+			webhook.errorPolicy = errorPolicy;
+			return this;
+		}
+		
+		public Builder withRateLimit(Double rateLimit) {
+			webhook.rateLimit = rateLimit;
+			return this;
+		}
+		
+		public Builder withRateBurst(Integer rateBurst) {
+			webhook.rateBurst = rateBurst;
+			return this;
+		}
+		
+		public Builder withConnectTimeout(Integer connectTimeout) {
+			webhook.connectTimeout = connectTimeout;
+			return this;
+		}
+		
+		public Builder withReadTimeout(Integer readTimeout) {
+			webhook.readTimeout = readTimeout;
+			return this;
+		}
+		
+		public Builder withCallTimeout(Integer callTimeout) {
+			webhook.callTimeout = callTimeout;
+			return this;
+		}
+		
+		public Builder withUserName(UserName userName) {
+			webhook.userName = userName;
+			return this;
+		}
+		
+		public Builder withPassword(Password password) {
+			webhook.password = password;
+			return this;
+		}
+		
+		public Builder withAccesskey(String accesskey) {
+			webhook.accesskey = accesskey;
+			return this;
+		}
+		
+		public WebhookConfiguration build() {
+			try {
+				webhook.authorization = webhook.authorization();
+				return webhook;
+			} finally {
+				this.webhook = null;
+			}
+		}
+	}
+	
+	private Long webhookPK;
+	private WebhookId webhookId;
+	private WebhookName webhookName;
+	private TopicName topicName;
+	private Endpoint endpoint;
+	private EndpointTemplate endpointTemplate;
+	private HttpMethod method;
+	private int batchSize;
+	private Integer maxBatchSize;
+	private WebhookErrorPolicy errorPolicy;
+	private WebhookDeliveryMode deliveryMode;
+	private WebhookCompression compression;
+	private Double rateLimit;
+	private Integer rateBurst;
+	private Integer connectTimeout;
+	private Integer readTimeout;
+	private Integer callTimeout;
+	private UserName userName;
+	private Password password;
+	private String accesskey;
+	private String authorization;
+	
+	private String authorization() {
+		if(userName != null) {
+			return "Basic "+encodeBase64String(toUtf8Bytes(userName+":"+new String(password.getValue())));
+		}
+		if(isNonEmptyString(accesskey)) {
+			return "Bearer "+accesskey;
+		}
+		return null;
+	}
+	
+	public Long getWebhookPK() {
+		return webhookPK;
+	}
+	
+	public WebhookId getWebhookId() {
+		return webhookId;
+	}
+	
+	public WebhookName getWebhookName() {
+		return webhookName;
+	}
+	
+	public TopicName getTopicName() {
+		return topicName;
+	}
+	
+	public Endpoint getEndpoint() {
+		return endpoint;
+	}
+	
+	/**
+	 * Returns the compiled endpoint URL template.
+	 * @return the compiled endpoint URL template.
+	 */
+	EndpointTemplate getEndpointTemplate() {
+		return endpointTemplate;
+	}
+	
+	public HttpMethod getMethod() {
+		return method;
+	}
+	
+	public int getBatchSize() {
+		return batchSize;
+	}
+	
+	/**
+	 * Returns whether the event loop tunes the batch size of this webhook.
+	 * @return <code>true</code> if the batch size is adaptive, <code>false</code> if the batch size is fixed.
+	 */
+	public boolean isAdaptiveBatchSize() {
+		return maxBatchSize != null && maxBatchSize > batchSize;
+	}
+	
+	/**
+	 * Returns the upper bound of an adaptive batch size.
+	 * Returns the configured batch size if the batch size is fixed.
+	 * @return the maximum batch size.
+	 */
+	public int getMaxBatchSize() {
+		return isAdaptiveBatchSize() ? maxBatchSize : batchSize;
+	}
+	
+	public WebhookDeliveryMode getDeliveryMode() {
+		return deliveryMode;
+	}
+	
+	public WebhookCompression getCompression() {
+		return compression;
+	}
+	
+	public WebhookErrorPolicy getErrorPolicy() {
+		return errorPolicy;
+	}
+	
+	/**
+	 * Returns whether the webhook endpoint has a rate limit.
+	 * @return <code>true</code> if the webhook endpoint has a rate limit, <code>false</code> if not.
+	 */
+	public boolean isRateLimited() {
+		return rateLimit != null && rateLimit > 0;
+	}
+	
+	/**
+	 * Returns the rate limit in requests per second or <code>null</code> if the webhook endpoint has no rate limit.
+	 * @return the rate limit.
+	 */
+	public Double getRateLimit() {
+		return rateLimit;
+	}
+	
+	/**
+	 * Returns the number of requests that can be sent at once.
+	 * Defaults to the number of requests per second, but at least one request, if no burst size is configured.
+	 * @return the burst size.
+	 */
+	public int getRateBurst() {
+		if(rateBurst != null && rateBurst > 0) {
+			return rateBurst;
+		}
+		return rateLimit != null ? Math.max(1, (int) Math.ceil(rateLimit)) : 1;
+	}
+	
+	/**
+	 * Returns the timeout to establish a connection to the webhook endpoint in milliseconds.
+	 * Defaults to the <code>leitstand.webhook.connect.timeout</code> system property.
+	 * @return the connect timeout.
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout != null ? connectTimeout : CONNECT_TIMEOUT;
+	}
+	
+	/**
+	 * Returns the timeout to wait for the webhook endpoint response in milliseconds.
+	 * Defaults to the <code>leitstand.webhook.read.timeout</code> system property.
+	 * @return the read timeout.
+	 */
+	public int getReadTimeout() {
+		return readTimeout != null ? readTimeout : READ_TIMEOUT;
+	}
+	
+	/**
+	 * Returns the deadline of a webhook invocation in milliseconds.
+	 * Defaults to the <code>leitstand.webhook.call.timeout</code> system property.
+	 * @return the invocation deadline.
+	 */
+	public int getCallTimeout() {
+		return callTimeout != null ? callTimeout : CALL_TIMEOUT;
+	}
+	
+	public UserName getUserName() {
+		return userName;
+	}
+	
+	public Password getPassword() {
+		return password;
+	}
+	
+	public String getAccesskey() {
+		return accesskey;
+	}
+	
+	/**
+	 * Returns the <code>Authorization</code> header value or <code>null</code> if the webhook endpoint is not authenticated.
+	 * @return the <code>Authorization</code> header value.
+	 */
+	public String getAuthorization() {
+		return authorization;
+	}
+	
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.jpa.SerializableJsonObjectConverter.parseJson;
+import static io.leitstand.commons.jsonb.IsoDateAdapter.isoDateFormat;
+import static javax.json.Json.createGenerator;
+
+import java.io.StringWriter;
+import java.util.Date;
+
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * The request entity sent to a webhook endpoint.
+ * <p>
+ * The envelope consists of the domain event properties and the domain event payload in the <code>message</code> property.
+ * The stored domain event payload is copied verbatim into the envelope, i.e. the payload is neither parsed nor serialized again.
+ * The envelope is only parsed if the JSON representation is requested, e.g. to resolve endpoint URL placeholders.
+ * An envelope can be shared by the invocations of different webhooks and is therefore thread-safe.
+ */
+class WebhookEnvelope {
+
+	static Builder newWebhookEnvelope() {
+		return new Builder();
+	}
+	
+	static class Builder {
+		private WebhookEnvelope envelope = new WebhookEnvelope();
+		
+		public Builder withEventId(String eventId) {
+			envelope.eventId = eventId;
+			return this;
+		}
+		
+		public Builder withEventName(String eventName) {
+			envelope.eventName = eventName;
+			return this;
+		}
+		
+		public Builder withCorrelationId(String correlationId) {
+			envelope.correlationId = correlationId;
+			return this;
+		}
+		
+		public Builder withTopicName(String topicName) {
+			envelope.topicName = topicName;
+			return this;
+		}
+		
+		public Builder withDateCreated(Date dateCreated) {
+			envelope.dateCreated = dateCreated;
+			return this;
+		}
+		
+		public Builder withPayload(String payload) {
+			envelope.payload = payload;
+			return this;
+		}
+		
+		public WebhookEnvelope build() {
+			try {
+				return envelope;
+			} finally {
+				this.envelope = null;
+			}
+		}
+	}
+	
+	private String eventId;
+	private String eventName;
+	private String correlationId;
+	private String topicName;
+	private Date dateCreated;
+	private String payload;
+	private String entity;
+	private JsonObject json;
+	
+	/**
+	 * Returns the envelope as JSON string.
+	 * @return the envelope as JSON string.
+	 */
+	synchronized String getEntity() {
+		if(entity == null) {
+			StringWriter properties = new StringWriter();
+			try(JsonGenerator generator = createGenerator(properties)){
+				generator.writeStartObject();
+				write(generator, "event_id", eventId);
+				write(generator, "event_name", eventName);
+				write(generator, "correlation_id", correlationId);
+				write(generator, "topic_name", topicName);
+				write(generator, "date_created", isoDateFormat(dateCreated));
+				generator.writeEnd();
+			}
+			StringBuffer buffer = properties.getBuffer();
+			// A blank payload is no JSON value and is omitted like a missing payload.
+			if(payload != null && !payload.trim().isEmpty()) {
+				// Splice the payload into the envelope by replacing the closing brace with the message property.
+				buffer.setLength(buffer.length() - 1);
+				if(buffer.length() > 1) {
+					buffer.append(',');
+				}
+				buffer.append("\"message\":")
+					  .append(payload)
+					  .append('}');
+			}
+			entity = buffer.toString();
+		}
+		return entity;
+	}
+	
+	private static void write(JsonGenerator generator, String name, String value) {
+		if(value != null) {
+			generator.write(name, value);
+		}
+	}
+	
+	/**
+	 * Returns the envelope as JSON object.
+	 * @return the envelope as JSON object.
+	 */
+	synchronized JsonObject toJson() {
+		if(json == null) {
+			json = parseJson(getEntity());
+		}
+		return json;
+	}
+	
+}
@@ -16,34 +16,53 @@
 package io.leitstand.event.webhook.model;
 
 import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static io.leitstand.event.webhook.model.WebhookCircuitBreaker.REJECTED;
+import static io.leitstand.event.webhook.model.WebhookConcurrencyLimits.ADAPTIVE_CONCURRENCY;
+import static io.leitstand.event.webhook.model.WebhookConcurrencyLimits.defaultNodeLimit;
 import static io.leitstand.event.webhook.service.ReasonCode.WHK0100I_WEBHOOK_EVENT_LOOP_STARTED;
 import static io.leitstand.event.webhook.service.ReasonCode.WHK0101I_WEBHOOK_EVENT_LOOP_STOPPED;
 import static io.leitstand.event.webhook.service.WebhookEventLoopStatus.newWebhookEventLoopStatus;
+import static java.lang.Boolean.parseBoolean;
 import static java.lang.Integer.parseInt;
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
 import static java.lang.Thread.currentThread;
-import static java.lang.Thread.sleep;
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.FINER;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
 
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.enterprise.concurrent.ContextService;
 import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
 import javax.inject.Inject;
-import javax.ws.rs.core.Response.StatusType;
 
 import io.leitstand.commons.ShutdownListener;
 import io.leitstand.commons.StartupListener;
+import io.leitstand.event.queue.service.MessageSent;
 import io.leitstand.event.webhook.service.WebhookEventLoopService;
 import io.leitstand.event.webhook.service.WebhookEventLoopStatus;
 import io.leitstand.event.webhook.service.WebhookService;
@@ -52,7 +71,14 @@ import io.leitstand.event.webhook.service.WebhookService;
 public class WebhookEventLoop implements Runnable, StartupListener, ShutdownListener, WebhookEventLoopService{
 	
 	private static final Logger LOG = Logger.getLogger(WebhookEventLoop.class.getName());
-	private static final int THREADS = parseInt(getSystemProperty("leitstand.webhook.event.loop.threads", "10"));
+	private static final int THREADS = parseInt(getSystemProperty("leitstand.webhook.event.loop.threads", defaultNodeLimit(10)));
+	private static final int MAX_INFLIGHT_BATCHES = parseInt(getSystemProperty("leitstand.webhook.event.loop.max.inflight.batches", "10000"));
+	private static final int MAX_INFLIGHT_BATCHES_PER_WEBHOOK = parseInt(getSystemProperty("leitstand.webhook.max.inflight.batches", "1"));
+	private static final boolean VIRTUAL_THREADS = parseBoolean(getSystemProperty("leitstand.webhook.event.loop.virtual.threads", "false"));
+	private static final boolean ASYNC_DISPATCH = "async".equalsIgnoreCase(getSystemProperty("leitstand.webhook.dispatch.mode", "sync"));
+	private static final long LEASE_REAPER_INTERVAL = SECONDS.toMillis(parseInt(getSystemProperty("leitstand.webhook.lease.reaper.interval", "60")));
+	private static final long WATCHDOG_INTERVAL = parseInt(getSystemProperty("leitstand.webhook.watchdog.interval", "1000"));
+	private static final int CLAIM_QUEUE_SIZE = parseInt(getSystemProperty("leitstand.webhook.claim.queue.size", String.valueOf(THREADS)));
 
 	
 	private volatile boolean enabled;
@@ -61,14 +87,90 @@ public class WebhookEventLoop implements Runnable, StartupListener, ShutdownList
 	@Resource
 	private ManagedExecutorService wm;
 	
+	@Resource
+	private ContextService context;
+	
 	@Inject
 	private WebhookInvocationService service;
 	
+	@Inject
+	private WebhookClientPool clients;
+	
+	@Inject
+	private WebhookCircuitBreakers breakers;
+	
+	@Inject
+	private WebhookRateLimiters limiters;
+	
+	@Inject
+	private WebhookBatchSizes batchSizes;
+	
+	@Inject
+	private WebhookConcurrencyLimits concurrency;
+	
 	private Semaphore permits;
 	
+	private final BlockingQueue<WebhookBatch> claimed = new ArrayBlockingQueue<>(CLAIM_QUEUE_SIZE);
+	
+	private final Semaphore wakeups = new Semaphore(0);
+	
+	private final ConcurrentMap<Long,AtomicInteger> pendingBatches = new ConcurrentHashMap<>();
+	
+	private final ConcurrentMap<Long,AtomicInteger> inflightBatches = new ConcurrentHashMap<>();
+	
+	private final ConcurrentMap<Long,Queue<WebhookBatch>> deferredBatches = new ConcurrentHashMap<>();
+	
+	private final ConcurrentMap<Long,Long> pauses = new ConcurrentHashMap<>();
+	
+	private final ConcurrentMap<WebhookBatch,WebhookBatchProcessor> running = new ConcurrentHashMap<>();
+	
+	private boolean asyncDispatch = ASYNC_DISPATCH;
+	
+	private ExecutorService virtualThreads;
+	
+	private long nextLeaseReaping;
+	
 	@PostConstruct
 	void initThreads() {
-		this.permits = new Semaphore(THREADS);
+		if(VIRTUAL_THREADS) {
+			virtualThreads = newVirtualThreadPerTaskExecutor(Executors.class);
+		}
+		this.permits = new Semaphore(credits());
+	}
+	
+	/**
+	 * Returns the number of batches that can be processed concurrently on this node.
+	 * A batch processed by the managed executor service occupies a managed thread until all invocations have been completed.
+	 * Hence, the number of batches in flight is limited to the number of event loop threads.
+	 * Non-blocking and virtual thread batches do not occupy a managed thread,
+	 * such that the number of batches in flight is only limited by the per-webhook concurrency limits
+	 * and by a safety ceiling set by the <code>leitstand.webhook.event.loop.max.inflight.batches</code> system property.
+	 * @return the number of batch execution credits.
+	 */
+	int credits() {
+		if(asyncDispatch || virtualThreads != null) {
+			return MAX_INFLIGHT_BATCHES;
+		}
+		return THREADS;
+	}
+	
+	/**
+	 * Creates an executor that runs each task in a new virtual thread.
+	 * Virtual threads are available as of JDK 21. 
+	 * The executor is created by reflection in order to run leitstand on older JDKs as well.
+	 * @param factory the class providing the <code>newVirtualThreadPerTaskExecutor</code> factory method, i.e. {@link Executors}
+	 * @return the virtual thread executor or <code>null</code> if virtual threads are not supported by the JDK.
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor(Class<?> factory) {
+		try {
+			ExecutorService executor = (ExecutorService) factory.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			LOG.info("Webhook batches are processed by virtual threads.");
+			return executor;
+		} catch (ReflectiveOperationException e) {
+			LOG.warning("Virtual threads are not supported by this JDK. Webhook batches are processed by the managed executor service.");
+			LOG.log(FINER,e.getMessage(),e);
+			return null;
+		}
 	}
 	
 	/**
@@ -85,6 +187,9 @@ public class WebhookEventLoop implements Runnable, StartupListener, ShutdownList
 	@Override
 	public void onShutdown() {
 		stopEventLoop();
+		if(virtualThreads != null) {
+			virtualThreads.shutdown();
+		}
 	}
 
 	/**
@@ -96,6 +201,8 @@ public class WebhookEventLoop implements Runnable, StartupListener, ShutdownList
 			enabled = true;
 			try {
 				wm.execute(this);
+				wm.execute(this::dispatchBatches);
+				wm.execute(this::watchInvocations);
 			} catch (Exception e) {
 				LOG.severe("Unable to start webhook event loop: "+e);
 				LOG.log(FINER,e.getMessage(),e);
@@ -128,47 +235,143 @@ public class WebhookEventLoop implements Runnable, StartupListener, ShutdownList
 	}
 	
 	/**
-	 * Runs the webhook event loop.
-	 * Queries the database for domain events.
-	 * Sleeps for an increasing interval with a ceiling of 180seconds if no messages exists.
-	 * The sleeping interval is reset whenever at lease a single message was read.
+	 * Wakes up the event loop when a new domain event has been committed.
+	 * @param event the sent message
+	 */
+	void onMessageSent(@Observes(during=AFTER_SUCCESS) MessageSent event) {
+		wakeup();
+	}
+	
+	/**
+	 * Wakes up the event loop if the event loop waits for new domain events.
+	 * Multiple wake up calls are coalesced to a single wake up of the event loop.
+	 */
+	void wakeup() {
+		if(wakeups.availablePermits() == 0) {
+			wakeups.release();
+		}
+	}
+	
+	/**
+	 * Runs the claimer stage of the webhook event loop.
+	 * Queries the database for domain events and hands the claimed batches over to the dispatcher stage.
+	 * Waits for an increasing interval with a ceiling of 60 seconds if no messages exists.
+	 * The wait is cancelled as soon as a new domain event has been committed.
+	 * The waiting interval is reset whenever the loop was woken up or at least a single message was read.
+	 * The claimer blocks when the hand-off queue is full, i.e. when the dispatcher cannot keep up with the claimed batches.
 	 */
 	@Override
 	public void run() {
 		LOG.info(() -> format("%s: Webhook event loop started.",
 							  WHK0100I_WEBHOOK_EVENT_LOOP_STARTED.getReasonCode()));
 		
-		while(enabled) {
-			
-			service.populateWebhookQueues();
-			
-			Queue<WebhookBatch> batches = new LinkedList<>(batches());
-			
-			while(!batches.isEmpty()) {
-				WebhookBatch batch = batches.poll();
-				try {
-					permits.acquire();
-					scheduleWebhookBatch(batch);
-				} catch(InterruptedException e) {
-					LOG.fine(() -> format("Wait for webhook execution permit was interrupted. %d pending invocations. %d available permits",
-										  batches.size(),
-										  permits.availablePermits()));
-					// Restore interrupt status and keep message loop alive.
-					currentThread().interrupt();
-				} finally {
-				    permits.release();
-				}
+		// An interrupted claimer stops claiming batches. The dispatcher still dispatches all claimed batches.
+		while(enabled && !currentThread().isInterrupted()) {
+			for(WebhookBatch batch : batches()) {
+				// Claimed batches count as pending until they have been processed.
+				pendingBatches(batch.getWebhookPK()).incrementAndGet();
+				handOver(batch);
 			}
 		}
 		
 		LOG.info(() -> format("%s: Webhook event loop stopped.",
 							  WHK0101I_WEBHOOK_EVENT_LOOP_STOPPED));
 	}
+	
+	private void handOver(WebhookBatch batch) {
+		boolean interrupted = false;
+		try {
+			while(true) {
+				try {
+					claimed.put(batch);
+					return;
+				} catch (InterruptedException e) {
+					// The batch is already claimed and must not get lost.
+					LOG.fine(() -> "Hand-over of claimed webhook batch was interrupted.");
+					interrupted = true;
+				}
+			}
+		} finally {
+			if(interrupted) {
+				// Restore interrupt status.
+				currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Runs the dispatcher stage of the webhook event loop.
+	 * Takes the claimed batches from the hand-off queue and schedules them for execution as soon as a batch execution credit is available.
+	 * A batch of a webhook that has reached its concurrency limit is deferred until another batch of the same webhook has been processed.
+	 * The dispatcher drains the hand-off queue when the event loop has been stopped.
+	 */
+	void dispatchBatches() {
+		boolean interrupted = false;
+		try {
+			while(enabled || !claimed.isEmpty()) {
+				try {
+					WebhookBatch batch = claimed.poll(1, SECONDS);
+					if(batch != null && !deferBatch(batch)) {
+						// The permit is released when the batch has been processed.
+						permits.acquireUninterruptibly();
+						scheduleWebhookBatch(batch);
+					}
+				} catch (InterruptedException e) {
+					// Claimed batches must not get lost. Keep dispatcher alive until the event loop is stopped.
+					LOG.fine(() -> "Wait for claimed webhook batches was interrupted.");
+					interrupted = true;
+				}
+			}
+		} finally {
+			if(interrupted) {
+				// Restore interrupt status.
+				currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Runs the watchdog of the webhook event loop.
+	 * The watchdog cancels all invocations running past their deadline, 
+	 * such that a webhook endpoint that never responds cannot pin a thread of the event loop.
+	 */
+	void watchInvocations() {
+		while(enabled || !running.isEmpty()) {
+			cancelExpiredInvocations(currentTimeMillis());
+			try {
+				MILLISECONDS.sleep(WATCHDOG_INTERVAL);
+			} catch (InterruptedException e) {
+				LOG.fine(() -> "Webhook invocation watchdog was interrupted.");
+				// Restore interrupt status
+				currentThread().interrupt();
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Cancels all invocations running past their deadline.
+	 * A cancelled invocation is recorded as failed invocation by its batch processor.
+	 * @param now the current time in milliseconds
+	 * @return the number of cancelled invocations.
+	 */
+	int cancelExpiredInvocations(long now) {
+		int cancelled = 0;
+		for(Map.Entry<WebhookBatch,WebhookBatchProcessor> processor : running.entrySet()) {
+			if(processor.getValue().cancelExpiredInvocation(now)) {
+				LOG.fine(() -> format("Cancelled expired invocation of webhook %s.",
+									  processor.getKey().getWebhookName()));
+				cancelled++;
+			}
+		}
+		return cancelled;
+	}
 
 	private void scheduleWebhookBatch(WebhookBatch batch) {
 		try {
-			wm.execute(new WebhookBatchProcessor(this,
-												 batch));
+			WebhookBatchProcessor processor = newWebhookBatchProcessor(batch);
+			running.put(batch, processor);
+			executor().execute(processor);
 			LOG.fine(() -> format("Successfully scheduled batch with %d invocation(s) for webhook %s.",
 					 			  batch.getWebhookInvocations().size(),
 								  batch.getWebhookName()));
@@ -178,60 +381,280 @@ public class WebhookEventLoop implements Runnable, StartupListener, ShutdownList
 									batch.getWebhookName(),
 									e.getMessage()));
 			LOG.log(FINE,e.getMessage(),e);
+			batchCompleted(batch, emptyList());
+		}
+	}
+	
+	/**
+	 * Defers the given batch if its webhook has reached the concurrency limit.
+	 * Otherwise, the batch is counted as in-flight batch of the webhook.
+	 * @param batch the claimed batch
+	 * @return <code>true</code> if the batch has been deferred, <code>false</code> if the batch can be scheduled.
+	 */
+	private boolean deferBatch(WebhookBatch batch) {
+		AtomicInteger inflight = inflightBatches(batch.getWebhookPK());
+		synchronized(inflight) {
+			if(inflight.get() >= concurrencyLimit(batch.getWebhookPK())) {
+				deferredBatches.computeIfAbsent(batch.getWebhookPK(), pk -> new ConcurrentLinkedQueue<>())
+							   .add(batch);
+				return true;
+			}
+			inflight.incrementAndGet();
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns the deferred batch that takes the place of the given completed batch.
+	 * @param batch the completed batch
+	 * @return the next deferred batch of the same webhook or <code>null</code> if no batch has been deferred or the concurrency limit does not allow to schedule it.
+	 */
+	private WebhookBatch nextDeferredBatch(WebhookBatch batch) {
+		AtomicInteger inflight = inflightBatches(batch.getWebhookPK());
+		synchronized(inflight) {
+			Queue<WebhookBatch> deferred = deferredBatches.get(batch.getWebhookPK());
+			// The completed batch is still counted as in-flight batch.
+			if(deferred != null && inflight.get() <= concurrencyLimit(batch.getWebhookPK())) {
+				WebhookBatch next = deferred.poll();
+				if(next != null) {
+					return next;
+				}
+			}
+			inflight.decrementAndGet();
+			return null;
+		}
+	}
+	
+	private AtomicInteger pendingBatches(Long webhookPK) {
+		return pendingBatches.computeIfAbsent(webhookPK, pk -> new AtomicInteger());
+	}
+	
+	private AtomicInteger inflightBatches(Long webhookPK) {
+		return inflightBatches.computeIfAbsent(webhookPK, pk -> new AtomicInteger());
+	}
+	
+	/**
+	 * Returns whether the webhook with the given primary key can process another batch.
+	 * A webhook can claim one batch more than its concurrency limit, 
+	 * such that the next batch is already claimed when an in-flight batch has been processed.
+	 * @param webhookPK the webhook primary key
+	 * @return <code>true</code> if the number of pending batches is below the concurrency limit of the webhook plus one prefetched batch,
+	 * the webhook is not paused and the circuit breaker of the webhook admits invocations, <code>false</code> otherwise.
+	 */
+	boolean hasCredit(Long webhookPK) {
+		return pendingBatches(webhookPK).get() <= concurrencyLimit(webhookPK) 
+			   && !isPaused(webhookPK) 
+			   && !breakers.isRejecting(webhookPK);
+	}
+	
+	private int concurrencyLimit(Long webhookPK) {
+		if(ADAPTIVE_CONCURRENCY) {
+			return concurrency.getLimit(webhookPK);
+		}
+		return MAX_INFLIGHT_BATCHES_PER_WEBHOOK;
+	}
+	
+	/**
+	 * Requests the permission to send the next invocation of the given batch.
+	 * The invocation is rejected if the webhook is paused or the circuit breaker of the webhook rejects the invocation.
+	 * @param batch the webhook batch
+	 * @return the permit of the invocation or {@link WebhookCircuitBreaker#REJECTED} if the invocation is rejected.
+	 */
+	long tryAcquireDispatchPermission(WebhookBatch batch) {
+		if(isPaused(batch.getWebhookPK())) {
+			return REJECTED;
+		}
+		return breakers.tryAcquirePermission(batch);
+	}
+	
+	/**
+	 * Returns the dispatch permission of an invocation of the given batch 
+	 * when the invocation ended without an outcome, e.g. because the invocation was interrupted.
+	 * @param batch the webhook batch
+	 * @param permit the permit of the invocation
+	 */
+	void releaseDispatchPermission(WebhookBatch batch, long permit) {
+		breakers.release(batch, permit);
+	}
+	
+	/**
+	 * Pauses the dispatch of messages to an overloaded webhook endpoint.
+	 * No messages are claimed for the webhook until the pause has elapsed.
+	 * @param batch the webhook batch
+	 * @param until the end of the pause in milliseconds
+	 */
+	void pauseWebhook(WebhookBatch batch, long until) {
+		pauses.merge(batch.getWebhookPK(), until, Math::max);
+		LOG.info(() -> format("Webhook %s paused for %d ms because the endpoint is overloaded.",
+							  batch.getWebhookName(),
+							  until - currentTimeMillis()));
+	}
+	
+	boolean isPaused(Long webhookPK) {
+		Long until = pauses.get(webhookPK);
+		if(until == null) {
+			return false;
+		}
+		if(until <= currentTimeMillis()) {
+			pauses.remove(webhookPK, until);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Notifies the event loop that a webhook invocation has been completed.
+	 * @param batch the webhook batch
+	 * @param permit the permit of the invocation
+	 * @param result the invocation result
+	 */
+	void invocationCompleted(WebhookBatch batch, long permit, WebhookInvocationResult result) {
+		breakers.record(batch, permit, result);
+		if(ADAPTIVE_CONCURRENCY) {
+			concurrency.record(batch, 
+							   result, 
+							   inflightBatches(batch.getWebhookPK()).get());
+		}
+	}
+	
+	/**
+	 * Notifies the event loop that a webhook batch has been processed.
+	 * Writes the invocation results, returns the batch execution credits and wakes up the event loop to process the next batch.
+	 * The rate limit tokens of messages that have not been sent are returned to the rate limiter of the webhook.
+	 * The batch execution credit is passed on to a deferred batch of the same webhook, if any.
+	 * @param batch the processed batch
+	 * @param results the invocation results
+	 */
+	void batchCompleted(WebhookBatch batch, List<WebhookInvocationResult> results) {
+		batchSizes.record(batch, results);
+		limiters.release(batch, unsent(batch, results));
+		try {
+			service.invocationsCompleted(batch, results);
+		} catch (Exception e) {
+			LOG.warning(() -> format("Failed to store %d invocation result(s) of webhook %s: %s",
+									 results.size(),
+									 batch.getWebhookName(),
+									 e.getMessage()));
+			LOG.log(FINE,e.getMessage(),e);
+		} finally {
+			running.remove(batch);
+			pendingBatches(batch.getWebhookPK()).decrementAndGet();
+			WebhookBatch next = nextDeferredBatch(batch);
+			if(next != null) {
+				scheduleWebhookBatch(next);
+			} else {
+				permits.release();
+			}
+			wakeup();
 		}
 	}
 
+	private static int unsent(WebhookBatch batch, List<WebhookInvocationResult> results) {
+		int unsent = batch.getWebhookInvocations().size();
+		for(WebhookInvocationResult result : results) {
+			if(result.isSent()) {
+				unsent--;
+			}
+		}
+		return unsent;
+	}
+	
+	private Executor executor() {
+		if(virtualThreads != null) {
+			// Propagate the container context to the virtual thread.
+			return task -> virtualThreads.execute(context.createContextualProxy(task, Runnable.class));
+		}
+		return wm;
+	}
+	
+	private WebhookBatchProcessor newWebhookBatchProcessor(WebhookBatch batch) {
+		if(asyncDispatch) {
+			// Non-blocking dispatch releases the thread after the first request was sent.
+			return new AsyncWebhookBatchProcessor(this, 
+												  clients.getClient(batch), 
+												  batch);
+		}
+		return new WebhookBatchProcessor(this,
+										 clients.getClient(batch),
+										 batch);
+	}
+	
+	void setAsyncDispatch(boolean asyncDispatch) {
+		this.asyncDispatch = asyncDispatch;
+	}
+	
+	void setVirtualThreads(ExecutorService virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+	
 	List<WebhookBatch> batches(){
-		List<WebhookBatch> batches = service.findInvocations();
+		List<WebhookBatch> batches = poll();
 		long waittime = 1;
 		while(batches.isEmpty()) {
 			try {
 				final long logwaittime = waittime;
-				LOG.fine(() -> format("No events to be processed. Sleep for %d seconds before polling for new events",logwaittime));
-				sleep(TimeUnit.SECONDS.toMillis(waittime));
-				batches = service.findInvocations();
-				// Wait time shall never exceed a minute (if no messages are there at all).
-				waittime = min(2*waittime, 60);
+				LOG.fine(() -> format("No events to be processed. Wait up to %d seconds before polling for new events",logwaittime));
+				if(wakeups.tryAcquire(timeout(waittime), MILLISECONDS)) {
+					LOG.finer(() -> "Woken up by new domain event.");
+					waittime = 1;
+				} else {
+					// Wait time shall never exceed a minute (if no messages are there at all).
+					waittime = min(2*waittime, 60);
+				}
+				batches = poll();
 			} catch (InterruptedException e) {
-				LOG.fine(() -> "Wait for domain events has been interrupted. Reset wait interval and proceed polling!");
-				waittime = 1;
+				// Leave the wait, otherwise every further wait fails immediately and the claimer polls the database in a tight loop.
+				LOG.fine(() -> "Wait for domain events has been interrupted.");
 				// Restore interrupt status.
 				currentThread().interrupt();
+				return batches;
 			}
 		}
 		return batches;
 	}
-
-	/**
-	 * Notifies the event loop about a successful webhook invocation and releases the thread execution permit.
-	 * @param batch the webhook batch job
-	 * @param invocation the webhook invocation
-	 * @param status the HTTP success family status code (e.g <code>200</code>, <code>201</code>, <code>202</code> or <code>204</code>)
-	 */
-	void webhookSucceeded(WebhookBatch batch, 
-						  WebhookInvocation invocation,
-						  StatusType status,
-						  long startUnixEpoch) {
-		service.invocationSucceeded(batch,
-								    invocation,
-									status,
-									startUnixEpoch);
+	
+	private long timeout(long waittime) {
+		long timeout = SECONDS.toMillis(waittime);
+		long throttled = limiters.getThrottleDelay();
+		if(throttled > 0) {
+			// Poll as soon as a rate-limited webhook can send the next request.
+			timeout = min(timeout, throttled);
+		}
+		long now = currentTimeMillis();
+		for(Long until : pauses.values()) {
+			// Poll as soon as a paused webhook can send the next request.
+			timeout = min(timeout, max(1, until - now));
+		}
+		return timeout;
 	}
-
+	
+	private List<WebhookBatch> poll() {
+		// Discard pending wake ups. The queues are populated with all committed messages anyways.
+		wakeups.drainPermits();
+		releaseExpiredLeases();
+		service.populateWebhookQueues();
+		return service.findInvocations(this::hasCredit);
+	}
+	
 	/**
-	 * Notifies the event loop about a failed webhook invocation and releases the thread execution permit.
-	 * @param batch the webhook batch job
-	 * @param invocation the webhook invocation
-	 * @param status the HTTP client or server error status (e.g. <code>400</code>, <code>401</code>, <code>403</code>, <code>404</code> or <code>500</code>)
-	 */
-	void webhookFailed(WebhookBatch batch,
-					   WebhookInvocation invocation,
-					   StatusType status,
-					   long startUnixEpoch) {
-		service.invocationFailed(batch,
-								 invocation,
-								 status,
-								 startUnixEpoch);
+	 * Returns messages with an expired lease to the webhook queues.
+	 * The expired leases are released in bounded batches once per reaper interval,
+	 * and with every poll as long as expired leases were found.
+	 */
+	void releaseExpiredLeases() {
+		long now = currentTimeMillis();
+		if(now < nextLeaseReaping) {
+			return;
+		}
+		try {
+			if(service.releaseExpiredLeases() == 0) {
+				nextLeaseReaping = now + LEASE_REAPER_INTERVAL;
+			}
+		} catch (Exception e) {
+			LOG.warning(() -> format("Failed to release expired webhook message leases: %s", e.getMessage()));
+			LOG.log(FINE,e.getMessage(),e);
+			nextLeaseReaping = now + LEASE_REAPER_INTERVAL;
+		}
 	}
 
 	/**
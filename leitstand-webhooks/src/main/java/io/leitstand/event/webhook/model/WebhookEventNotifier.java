@@ -0,0 +1,204 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static io.leitstand.event.webhook.service.ReasonCode.WHK0102I_WEBHOOK_EVENT_NOTIFIER_LISTENING;
+import static io.leitstand.event.webhook.service.ReasonCode.WHK0103E_WEBHOOK_EVENT_NOTIFIER_DISCONNECTED;
+import static io.leitstand.event.webhook.service.ReasonCode.WHK0108E_WEBHOOK_EVENT_NOTIFICATION_FAILED;
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Integer.parseInt;
+import static java.lang.String.format;
+import static java.lang.Thread.currentThread;
+import static java.lang.Thread.sleep;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.FINER;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import io.leitstand.commons.ShutdownListener;
+import io.leitstand.commons.StartupListener;
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.event.queue.service.MessageSent;
+
+/**
+ * Wakes up the webhook event loops of all nodes when a new domain event has been committed.
+ * <p>
+ * The notifier issues a PostgreSQL <code>NOTIFY</code> on the <code>bus_message</code> channel for every sent domain event.
+ * The notification conveys the name of the topic the domain event was sent to.
+ * The notification is issued after the publishing transaction has been committed, 
+ * such that a failing notification cannot roll back the publishing transaction.
+ * Every node keeps a dedicated connection to <code>LISTEN</code> on the <code>bus_message</code> channel and wakes up the local 
+ * {@link WebhookEventLoop} when a notification arrives.
+ * The event loop falls back to polling if the listener connection drops. 
+ * The notifier reconnects periodically until the connection is restored.
+ * <p>
+ * The notifier is disabled by default and enabled by setting the <code>leitstand.webhook.notifier.enabled</code> 
+ * system property to <code>true</code>.
+ */
+@ApplicationScoped
+public class WebhookEventNotifier implements Runnable, StartupListener, ShutdownListener {
+	
+	private static final Logger LOG = Logger.getLogger(WebhookEventNotifier.class.getName());
+	private static final boolean ENABLED = parseBoolean(getSystemProperty("leitstand.webhook.notifier.enabled", "false"));
+	private static final int RECONNECT_DELAY = parseInt(getSystemProperty("leitstand.webhook.notifier.reconnect.delay", "10"));
+	private static final int LISTEN_TIMEOUT_MILLIS = 1000;
+	static final String CHANNEL = "bus_message";
+
+	@Resource(lookup="java:/jdbc/leitstand")
+	private DataSource ds;
+	
+	@Inject
+	@Webhooks
+	private DatabaseService db;
+	
+	@Inject
+	private WebhookEventLoop loop;
+	
+	@Resource
+	private ManagedExecutorService wm;
+	
+	private boolean enabled = ENABLED;
+	private volatile boolean listening;
+	
+	protected WebhookEventNotifier() {
+		// CDI
+	}
+	
+	WebhookEventNotifier(DataSource ds, 
+						 DatabaseService db, 
+						 WebhookEventLoop loop, 
+						 ManagedExecutorService wm,
+						 boolean enabled) {
+		this.ds = ds;
+		this.db = db;
+		this.loop = loop;
+		this.wm = wm;
+		this.enabled = enabled;
+	}
+	
+	/**
+	 * Starts listening for notifications when leitstand is started.
+	 */
+	@Override
+	public void onStartup() {
+		if(enabled && !listening) {
+			listening = true;
+			wm.execute(this);
+		}
+	}
+	
+	/**
+	 * Stops listening for notifications when leitstand is stopped.
+	 */
+	@Override
+	public void onShutdown() {
+		listening = false;
+	}
+	
+	/**
+	 * Notifies all listeners about the sent message once the publishing transaction has been committed.
+	 * The notification is only a hint to wake up the event loops. 
+	 * A failing notification is logged and never affects the publisher. 
+	 * The event loops pick up the message with their next poll instead.
+	 * @param event the sent message
+	 */
+	void onMessageSent(@Observes(during=AFTER_SUCCESS) MessageSent event) {
+		if(!enabled) {
+			return;
+		}
+		try {
+			db.executeQuery(prepare("SELECT pg_notify(?, ?)", 
+									CHANNEL,
+									event.getTopicName().toString()), 
+							rs -> rs.getString(1));
+		} catch (RuntimeException e) {
+			LOG.warning(() -> format("%s: Webhook event notification for topic %s failed: %s", 
+									 WHK0108E_WEBHOOK_EVENT_NOTIFICATION_FAILED.getReasonCode(),
+									 event.getTopicName(),
+									 e.getMessage()));
+			LOG.log(FINER,e.getMessage(),e);
+		}
+	}
+	
+	/**
+	 * Listens for notifications and reconnects if the listener connection drops or the listener fails unexpectedly.
+	 */
+	@Override
+	public void run() {
+		while(listening) {
+			try (Connection c = ds.getConnection()){
+				listen(c);
+			} catch (SQLException | RuntimeException e) {
+				LOG.warning(() -> format("%s: Webhook event notifier disconnected: %s. Reconnect in %d seconds.", 
+										 WHK0103E_WEBHOOK_EVENT_NOTIFIER_DISCONNECTED.getReasonCode(),
+										 e.getMessage(),
+										 RECONNECT_DELAY));
+				LOG.log(FINER,e.getMessage(),e);
+				awaitReconnect();
+			}
+		}
+	}
+	
+	void listen(Connection c) throws SQLException {
+		try (Statement stmt = c.createStatement()){
+			stmt.execute("LISTEN "+CHANNEL);
+		}
+		LOG.info(() -> format("%s: Webhook event notifier listens for domain events.",
+							  WHK0102I_WEBHOOK_EVENT_NOTIFIER_LISTENING.getReasonCode()));
+		// Process messages that were sent while the listener was disconnected.
+		loop.wakeup();
+		PGConnection pg = c.unwrap(PGConnection.class);
+		while(listening) {
+			PGNotification[] notifications = pg.getNotifications(LISTEN_TIMEOUT_MILLIS);
+			if(notifications != null && notifications.length > 0) {
+				LOG.finer(() -> format("%d domain event notification(s) received.", notifications.length));
+				loop.wakeup();
+			}
+		}
+	}
+	
+	private void awaitReconnect() {
+		try {
+			sleep(SECONDS.toMillis(RECONNECT_DELAY));
+		} catch (InterruptedException e) {
+			LOG.fine(() -> "Webhook event notifier interrupted. Stop listening for notifications.");
+			listening = false;
+			// Restore interrupt status
+			currentThread().interrupt();
+		}
+	}
+	
+	boolean isListening() {
+		return listening;
+	}
+	
+}
@@ -19,6 +19,12 @@ import io.leitstand.event.queue.service.DomainEventId;
 import io.leitstand.event.queue.service.DomainEventName;
 import io.leitstand.event.webhook.service.Endpoint;
 
+/**
+ * A webhook invocation for a domain event.
+ * <p>
+ * The request entity and the endpoint URL are materialized from the domain event envelope when they are requested first,
+ * i.e. by the thread that processes the webhook batch rather than by the thread that polls for new domain events.
+ */
 class WebhookInvocation {
 	
 	static Builder newWebhookInvocation() {
@@ -58,6 +64,16 @@ class WebhookInvocation {
 			return this;
 		}
 		
+		public Builder withEndpointTemplate(EndpointTemplate template) {
+			invocation.template = template;
+			return this;
+		}
+		
+		public Builder withEnvelope(WebhookEnvelope envelope) {
+			invocation.envelope = envelope;
+			return this;
+		}
+		
 		public WebhookInvocation build() {
 			try {
 				return invocation;
@@ -72,11 +88,16 @@ class WebhookInvocation {
 	private DomainEventId eventId;
 	private DomainEventName eventName;
 	private Endpoint endpoint;
+	private EndpointTemplate template;
+	private WebhookEnvelope envelope;
 	private String contentType;
 	private String message;
 	
 	
-	public Endpoint getEndpoint() {
+	public synchronized Endpoint getEndpoint() {
+		if(endpoint == null && template != null) {
+			endpoint = template.apply(envelope);
+		}
 		return endpoint;
 	}
 
@@ -92,7 +113,10 @@ class WebhookInvocation {
 		return eventName;
 	}
 	
-	public String getMessage() {
+	public synchronized String getMessage() {
+		if(message == null && envelope != null) {
+			message = envelope.getEntity();
+		}
 		return message;
 	}
 	
@@ -100,4 +124,8 @@ class WebhookInvocation {
 		return messagePK;
 	}
 	
+	WebhookEnvelope getEnvelope() {
+		return envelope;
+	}
+	
 }
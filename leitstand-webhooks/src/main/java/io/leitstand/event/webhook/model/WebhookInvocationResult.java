@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.event.webhook.service.MessageState.FAILED;
+import static io.leitstand.event.webhook.service.MessageState.PROCESSED;
+import static io.leitstand.event.webhook.service.MessageState.READY;
+import static java.lang.System.currentTimeMillis;
+
+import javax.ws.rs.core.Response.StatusType;
+
+import io.leitstand.event.webhook.service.MessageState;
+
+/**
+ * The outcome of a webhook invocation.
+ * <p>
+ * The results of a batch are written to the webhook message queue at once when the batch has been processed.
+ */
+class WebhookInvocationResult {
+	
+	static WebhookInvocationResult invocationSucceeded(WebhookInvocation invocation, 
+													   StatusType status, 
+													   long start) {
+		return new WebhookInvocationResult(invocation, 
+										   PROCESSED, 
+										   status.getStatusCode(), 
+										   currentTimeMillis() - start);
+	}
+	
+	static WebhookInvocationResult invocationFailed(WebhookInvocation invocation, 
+													StatusType status, 
+													long start) {
+		return new WebhookInvocationResult(invocation, 
+										   FAILED, 
+										   status.getStatusCode(), 
+										   currentTimeMillis() - start);
+	}
+	
+	static WebhookInvocationResult invocationFailed(WebhookInvocation invocation, 
+													long start) {
+		return new WebhookInvocationResult(invocation, 
+										   FAILED, 
+										   null, 
+										   currentTimeMillis() - start);
+	}
+	
+	/**
+	 * Creates the result of an invocation that has been refused by the webhook endpoint because the endpoint is overloaded.
+	 * The message is returned to the queue without counting a processing attempt.
+	 * @param invocation the deferred invocation
+	 * @param status the HTTP response status
+	 * @param start the invocation start timestamp
+	 * @return the result of the deferred invocation.
+	 */
+	static WebhookInvocationResult invocationDeferred(WebhookInvocation invocation, 
+													  StatusType status, 
+													  long start) {
+		return new WebhookInvocationResult(invocation, 
+										   READY, 
+										   status.getStatusCode(), 
+										   currentTimeMillis() - start);
+	}
+	
+	/**
+	 * Creates the result of an invocation that has not been sent, 
+	 * because the circuit breaker of the webhook is open or the webhook dispatch is paused.
+	 * The message is returned to the queue without counting a processing attempt.
+	 * @param invocation the rejected invocation
+	 * @return the result of the rejected invocation.
+	 */
+	static WebhookInvocationResult invocationRejected(WebhookInvocation invocation) {
+		return new WebhookInvocationResult(invocation, 
+										   READY, 
+										   null, 
+										   null);
+	}
+	
+	private WebhookInvocation invocation;
+	private MessageState state;
+	private Integer httpStatus;
+	private Long execTime;
+	
+	private WebhookInvocationResult(WebhookInvocation invocation,
+									MessageState state,
+									Integer httpStatus,
+									Long execTime) {
+		this.invocation = invocation;
+		this.state = state;
+		this.httpStatus = httpStatus;
+		this.execTime = execTime;
+	}
+	
+	public WebhookInvocation getInvocation() {
+		return invocation;
+	}
+	
+	public Long getMessagePK() {
+		return invocation.getMessagePK();
+	}
+	
+	public MessageState getMessageState() {
+		return state;
+	}
+	
+	public Integer getHttpStatus() {
+		return httpStatus;
+	}
+	
+	public Long getExecTime() {
+		return execTime;
+	}
+	
+	public boolean isSucceeded() {
+		return state == PROCESSED;
+	}
+	
+	public boolean isRejected() {
+		return state == READY;
+	}
+	
+	/**
+	 * Returns whether the invocation was sent to the webhook endpoint.
+	 * Invocations rejected by the circuit breaker or by a paused webhook were not sent.
+	 * @return <code>true</code> if the invocation was sent, <code>false</code> if not.
+	 */
+	public boolean isSent() {
+		return state != READY || httpStatus != null;
+	}
+	
+}
@@ -16,226 +16,388 @@
 package io.leitstand.event.webhook.model;
 
 import static io.leitstand.commons.db.DatabaseService.prepare;
-import static io.leitstand.commons.jpa.SerializableJsonObjectConverter.parseJson;
-import static io.leitstand.commons.json.NullSafeJsonObjectBuilder.createNullSafeJsonObjectBuilder;
-import static io.leitstand.commons.jsonb.IsoDateAdapter.isoDateFormat;
-import static io.leitstand.commons.model.ByteArrayUtil.decodeBase64String;
-import static io.leitstand.commons.model.ObjectUtil.optional;
-import static io.leitstand.commons.model.StringUtil.fromUtf8Bytes;
-import static io.leitstand.commons.model.StringUtil.isNonEmptyString;
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
 import static io.leitstand.event.queue.service.DomainEventId.domainEventId;
 import static io.leitstand.event.queue.service.DomainEventName.domainEventName;
-import static io.leitstand.event.webhook.model.Webhook.findAllEnabledWebhooks;
 import static io.leitstand.event.webhook.model.WebhookBatch.newWebhookBatch;
+import static io.leitstand.event.webhook.model.WebhookEnvelope.newWebhookEnvelope;
 import static io.leitstand.event.webhook.model.WebhookInvocation.newWebhookInvocation;
-import static io.leitstand.event.webhook.service.MessageState.FAILED;
-import static io.leitstand.event.webhook.service.MessageState.PROCESSED;
-import static io.leitstand.security.auth.UserName.userName;
+import static java.lang.Integer.parseInt;
+import static java.lang.Math.min;
 import static java.lang.String.format;
-import static java.lang.System.currentTimeMillis;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 
 import javax.inject.Inject;
-import javax.json.JsonObject;
-import javax.security.enterprise.credential.Password;
-import javax.ws.rs.core.Response.StatusType;
 
 import io.leitstand.commons.db.DatabaseService;
-import io.leitstand.commons.model.Repository;
 import io.leitstand.commons.model.Service;
-import io.leitstand.security.auth.UserName;
-import io.leitstand.security.crypto.MasterSecret;
 
 @Service
 public class WebhookInvocationService {
 	
 	private static final Logger LOG = Logger.getLogger(WebhookInvocationService.class.getName());
+	private static final int LEASE_DURATION = parseInt(getSystemProperty("leitstand.webhook.lease.duration", "300"));
+	private static final int LEASE_REAPER_BATCH_SIZE = parseInt(getSystemProperty("leitstand.webhook.lease.reaper.batch.size", "1000"));
+	private static final int RETRY_MAX_ATTEMPTS = parseInt(getSystemProperty("leitstand.webhook.retry.max.attempts", "5"));
+	private static final int RETRY_BACKOFF_INITIAL = parseInt(getSystemProperty("leitstand.webhook.retry.backoff.initial", "10"));
+	private static final int RETRY_BACKOFF_MAX = parseInt(getSystemProperty("leitstand.webhook.retry.backoff.max", "3600"));
+	// A failed invocation is retried if the message has attempts left.
+	private static final String RETRY = "r.state = 'FAILED' AND COALESCE(wm.attempts,0) + 1 < CAST(? AS INT4)";
+	static final String NODE_ID = getSystemProperty("leitstand.webhook.node.id", defaultNodeId());
+	
+	/**
+	 * Returns the default ID of this node, which consists of the host name and the process ID.
+	 * @return the default node ID.
+	 */
+	static String defaultNodeId() {
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			host = "localhost";
+		}
+		return host+"/"+ProcessHandle.current().pid();
+	}
 
 	@Inject
-	@Webhooks
-	private Repository repository;
+	private WebhookRegistry registry;
 	
 	@Inject
-	private WebhookRewritingService rewriter;
+	private WebhookRateLimiters limiters;
 	
 	@Inject
-	@Webhooks
-	private DatabaseService db;
+	private WebhookBatchSizes batchSizes;
 	
 	@Inject
-	private MasterSecret secret;
+	@Webhooks
+	private DatabaseService db;
 	
 	protected WebhookInvocationService() {
 		// CDI
 	}
 	
-	protected WebhookInvocationService(Repository repository, 
-									   DatabaseService db,
-									   MasterSecret secret,
-									   WebhookRewritingService rewriter) {
-		this.repository = repository;
+	protected WebhookInvocationService(WebhookRegistry registry, 
+									   WebhookRateLimiters limiters,
+									   WebhookBatchSizes batchSizes,
+									   DatabaseService db) {
+		this.registry = registry;
+		this.limiters = limiters;
+		this.batchSizes = batchSizes;
 		this.db = db;
-		this.secret = secret;
-		this.rewriter = rewriter;
 	}
 	
 	public List<WebhookBatch> findInvocations(){
-		List<WebhookBatch> batches = new LinkedList<>();
-		for(Webhook webhook : repository.execute(findAllEnabledWebhooks())) {
-			UserName userName = null;
-			String password = null;
-			String accesskey = null;
-			if(webhook.isBasicAuthentication()) {
-				userName = userName(webhook.getUser());
-				password = fromUtf8Bytes(secret.decrypt(decodeBase64String(webhook.getPassword64())));
-			} else if (isNonEmptyString(webhook.getAccessKey64())) {
-				accesskey = fromUtf8Bytes(secret.decrypt(decodeBase64String(webhook.getAccessKey64())));
+		return findInvocations(webhookPK -> true);
+	}
+	
+	/**
+	 * Claims the next batch of ready messages for all enabled webhooks that satisfy the given predicate.
+	 * Messages of webhooks that do not satisfy the predicate remain in the queue.
+	 * <p>
+	 * A claimed message is leased to this node for the number of seconds configured by the 
+	 * <code>leitstand.webhook.lease.duration</code> system property.
+	 * Messages with an expired lease are returned to the queue by {@link #releaseExpiredLeases()}.
+	 * <p>
+	 * The number of claimed messages of a rate-limited webhook is limited to the available tokens of the webhook rate limiter.
+	 * The number of claimed messages of a webhook with adaptive batch size is limited to the current batch size of the webhook.
+	 * @param eligible tests whether the webhook with the given primary key is eligible to process another batch
+	 * @return the claimed webhook batches.
+	 */
+	public List<WebhookBatch> findInvocations(Predicate<Long> eligible){
+		WebhookRegistry.Snapshot snapshot = registry.getSnapshot();
+		List<Object> args = new ArrayList<>();
+		StringBuilder sql = new StringBuilder("WITH quota (webhook_id, claimable) AS (VALUES ");
+		for(WebhookConfiguration webhook : snapshot.getWebhooks()) {
+			if(!eligible.test(webhook.getWebhookPK())) {
+				LOG.finer(() -> format("Skip webhook %s with too many pending batches.",webhook.getWebhookName()));
+				continue;
+			}
+			int claimable = min(batchSizes.batchSize(webhook), limiters.available(webhook));
+			if(claimable < 1) {
+				LOG.finer(() -> format("Skip webhook %s with exhausted rate limit.",webhook.getWebhookName()));
+				continue;
 			}
-			
-			List<WebhookInvocation> invocations = db.executeQuery(prepare("WITH batch AS ( "+
-																			   "UPDATE bus.webhook_message "+
-																			   "SET state = 'IN_PROGRESS' "+
-																			   "WHERE message_id "+
-																			   "IN (SELECT message_id "+ 
-																			   	   "FROM  bus.webhook_message "+ 
-																			   	   "WHERE webhook_id = ? "+
-																			   	   "AND state ='READY' "+
-																			   	   "FOR UPDATE SKIP LOCKED "+
-																			   	   "LIMIT ?) "+
-																			   "RETURNING message_id) "+
-																		  "SELECT m.id, m.uuid, m.name, m.correlationid, m.message, m.tscreated "+
-																		  "FROM bus.message m "+
-																		  "WHERE m.id "+
-																		  "IN (SELECT message_id "+ 
-																		  	  "FROM batch)",
-																		  webhook.getId(),
-																		  webhook.getBatchSize()),
-																  rs -> {
-																	JsonObject jsonPayload =  parseJson(rs.getString(5));
-																	JsonObject requestEntity = createNullSafeJsonObjectBuilder()
-																					   		   .add("event_id",rs.getString(2))
-																					   		   .add("event_name",rs.getString(3))
-																					   		   .add("correlation_id",rs.getString(4))
-																					   		   .add("message",jsonPayload)
-																					   		   .add("topic_name", webhook.getTopicName().toString())
-																					   		   .add("date_created",isoDateFormat(rs.getTimestamp(6)))
-																					   		   .build();	
+			sql.append(args.isEmpty() ? "" : ",");
+			sql.append("(CAST(? AS INT8), CAST(? AS INT4))");
+			args.add(webhook.getWebhookPK());
+			args.add(claimable);
+		}
+		
+		if(args.isEmpty()) {
+			return new LinkedList<>();
+		}
 		
-																	return newWebhookInvocation()
-																		   .withEndpoint(rewriter.rewriteEndpoint(webhook, requestEntity))
-																		   .withDomainEventId(domainEventId(rs.getString(2)))
-																		   .withDomainEventName(domainEventName(rs.getString(3)))
-																		   .withMessagePK(rs.getLong(1))
-																		   .withContentType(APPLICATION_JSON)
-																		   .withMessage(requestEntity.toString())
-																		   .build();
-															
-														});
-			
-			
+		// Claim up to the quota of ready messages of every eligible webhook with a single statement.
+		// Every quota row locks only its own ready messages, such that the costs grow with the claimed messages rather than with the backlog.
+		sql.append("), "+
+				   "claimable AS ("+
+					 "SELECT c.webhook_id, c.message_id "+
+				   	 "FROM quota q "+
+					 "CROSS JOIN LATERAL ("+
+				   	   "SELECT wm.webhook_id, wm.message_id "+
+					   "FROM bus.webhook_message wm "+
+				   	   "WHERE wm.webhook_id = q.webhook_id "+
+					   "AND wm.state = 'READY' "+
+				   	   "AND (wm.tsnextattempt IS NULL OR wm.tsnextattempt <= now()) "+
+					   "ORDER BY wm.message_id "+
+				   	   "LIMIT q.claimable "+
+					   "FOR UPDATE SKIP LOCKED) c), "+
+				   "batch AS ("+
+					 "UPDATE bus.webhook_message wm "+
+				   	 "SET state = 'IN_PROGRESS', leaseowner = ?, tsleaseexpiry = now() + CAST(? AS INT4) * INTERVAL '1 second' "+
+					 "FROM claimable c "+
+				   	 "WHERE wm.webhook_id = c.webhook_id "+
+					 "AND wm.message_id = c.message_id "+
+				   	 "AND wm.state = 'READY' "+
+					 "RETURNING wm.webhook_id, wm.message_id) "+
+				   // Transfer the payload of a message claimed by multiple webhooks only once.
+				   "SELECT b.webhook_id, m.id, m.uuid, m.name, m.correlationid, "+
+				   "CASE WHEN ROW_NUMBER() OVER (PARTITION BY m.id ORDER BY b.webhook_id) = 1 THEN m.message END, "+
+				   "m.tscreated "+
+				   "FROM batch b "+
+				   "JOIN bus.message m "+
+				   "ON m.id = b.message_id "+
+				   "ORDER BY m.id, b.webhook_id");
+		args.add(NODE_ID);
+		args.add(LEASE_DURATION);
+		
+		// All webhooks share the envelope of the same message.
+		Map<Long,WebhookEnvelope> envelopes = new HashMap<>();
+		List<Entry<Long,WebhookInvocation>> claimed = db.executeQuery(prepare(sql.toString(),args.toArray()),
+																	  rs -> {
+																		  WebhookConfiguration webhook = snapshot.getWebhook(rs.getLong(1));
+																		  WebhookEnvelope envelope = envelopes.get(rs.getLong(2));
+																		  if(envelope == null) {
+																			  envelope = newEnvelope(webhook, rs);
+																			  envelopes.put(rs.getLong(2), envelope);
+																		  }
+																		  return new SimpleEntry<>(webhook.getWebhookPK(),
+																				  				   newInvocation(webhook, envelope, rs));
+																	  });
+		LOG.fine(() -> format("%d messages claimed by %d webhook invocations.",
+							  envelopes.size(),
+							  claimed.size()));
+		
+		// Group the claimed messages by webhook.
+		Map<Long,List<WebhookInvocation>> invocations = new LinkedHashMap<>();
+		for(Entry<Long,WebhookInvocation> invocation : claimed) {
+			invocations.computeIfAbsent(invocation.getKey(), 
+										webhookPK -> new LinkedList<>())
+					   .add(invocation.getValue());
+		}
+
+		List<WebhookBatch> batches = new LinkedList<>();
+		for(Entry<Long,List<WebhookInvocation>> batch : invocations.entrySet()) {
+			WebhookConfiguration webhook = snapshot.getWebhook(batch.getKey());
 			LOG.fine(() -> format("%d invocations loaded fetched for webhook %s",
-								  invocations.size(),
+								  batch.getValue().size(),
 								  webhook.getWebhookName()));
-			
-			if(!invocations.isEmpty()) {
-				batches.add(newWebhookBatch()
-							.withWebhookPK(webhook.getId())
-							.withWebhookId(webhook.getWebhookId())
-							.withWebhookName(webhook.getWebhookName())
-							.withHttpMethod(webhook.getHttpMethod())
-							.withUserName(userName)
-							.withPassword(optional(password, Password::new))
-							.withAccesskey(accesskey)
-							.withWebhookInvocations(invocations)
-							.build());
-			}
-			
+			// Every claimed message consumes a token of a rate-limited webhook.
+			limiters.acquire(webhook, batch.getValue().size());
+			batches.add(newBatch(webhook, batch.getValue()));
 		}
-		
 		return batches;
 	}
 	
-	public void invocationSucceeded(WebhookBatch batch, 
-									WebhookInvocation invocation, 
-									StatusType status,
-									long start) {
-		long duration = currentTimeMillis() - start;
-		LOG.info(() -> format("%s message (%s) was successfully processed by webhook %s (%s %s) in %.3f seconds. Returned status was %d %s",
-							  invocation.getEventName(),
-							  invocation.getEventId(),
-							  batch.getWebhookName(),
-							  batch.getMethod(),
-							  invocation.getEndpoint(),
-							  duration/1000d,
-							  status.getStatusCode(),
-							  status.getReasonPhrase()));
-		
-		Webhook_Message message = repository.find(Webhook_Message.class, 
-												  new Webhook_MessagePK(batch.getWebhookPK(), invocation.getMessagePK()));
-		message.setHttpStatus(status.getStatusCode());
-		message.setExecTime(duration);
-		message.setMessageState(PROCESSED);	
-
+	private WebhookEnvelope newEnvelope(WebhookConfiguration webhook, ResultSet rs) throws SQLException {
+		return newWebhookEnvelope()
+			   .withEventId(rs.getString(3))
+			   .withEventName(rs.getString(4))
+			   .withCorrelationId(rs.getString(5))
+			   .withPayload(rs.getString(6))
+			   .withTopicName(webhook.getTopicName().toString())
+			   .withDateCreated(rs.getTimestamp(7))
+			   .build();	
 	}
-
-	public void invocationFailed(WebhookBatch batch, 
-								 WebhookInvocation invocation, 
-								 StatusType status, 
-								 long start) {
-		long duration = currentTimeMillis() - start;
+	
+	private WebhookInvocation newInvocation(WebhookConfiguration webhook, 
+											WebhookEnvelope envelope, 
+											ResultSet rs) throws SQLException {
+		return newWebhookInvocation()
+			   .withEndpointTemplate(webhook.getEndpointTemplate())
+			   .withEnvelope(envelope)
+			   .withDomainEventId(domainEventId(rs.getString(3)))
+			   .withDomainEventName(domainEventName(rs.getString(4)))
+			   .withMessagePK(rs.getLong(2))
+			   .withContentType(APPLICATION_JSON)
+			   .build();
+	}
+	
+	private WebhookBatch newBatch(WebhookConfiguration webhook, List<WebhookInvocation> invocations) {
+		return newWebhookBatch()
+			   .withWebhook(webhook)
+			   .withWebhookInvocations(invocations)
+			   .build();
+	}
+	
+	/**
+	 * Writes the results of a processed webhook batch to the webhook message queue.
+	 * <p>
+	 * All results are written by a single <code>UPDATE</code> statement 
+	 * instead of loading and updating each message individually.
+	 * Results of messages that are no longer leased to this node are discarded,
+	 * because the messages have been returned to the queue in the meantime.
+	 * <p>
+	 * A failed message is returned to the queue for another attempt until the maximum number of attempts 
+	 * configured by the <code>leitstand.webhook.retry.max.attempts</code> system property is reached.
+	 * The next attempt is delayed by an exponential backoff, starting with 
+	 * <code>leitstand.webhook.retry.backoff.initial</code> seconds and growing up to 
+	 * <code>leitstand.webhook.retry.backoff.max</code> seconds.
+	 * Each delay is shortened by a random jitter of up to 50% to spread the retries of different messages over time.
+	 * A message that has no attempts left remains in the <code>FAILED</code> state.
+	 * @param batch the processed batch
+	 * @param results the invocation results
+	 */
+	public void invocationsCompleted(WebhookBatch batch, 
+									 List<WebhookInvocationResult> results) {
+		if(results.isEmpty()) {
+			return;
+		}
+		// The statement avoids UPDATE ... FROM to run on H2 as well as on PostgreSQL.
+		StringBuilder sql = new StringBuilder("UPDATE bus.webhook_message wm "+
+											  "SET (state, tsnextattempt, attempts, httpstatus, exectime) = ("+
+											  "SELECT CASE WHEN "+RETRY+" THEN 'READY' ELSE r.state END, "+
+											  "CASE WHEN "+RETRY+" THEN now() + "+
+											  	"LEAST(CAST(? AS INT4), CAST(? AS INT4) * POWER(2, COALESCE(wm.attempts,0))) * (0.5 + random() / 2) * INTERVAL '1' SECOND END, "+
+											  // Rejected invocations are returned to the queue without counting an attempt.
+											  "COALESCE(wm.attempts,0) + CASE WHEN r.state = 'READY' THEN 0 ELSE 1 END, "+
+											  "r.httpstatus, r.exectime "+
+											  "FROM (VALUES ");
+		List<Object> args = new ArrayList<>(5 * results.size() + 6);
+		args.add(RETRY_MAX_ATTEMPTS);
+		args.add(RETRY_MAX_ATTEMPTS);
+		args.add(RETRY_BACKOFF_MAX);
+		args.add(RETRY_BACKOFF_INITIAL);
+		StringBuilder messages = new StringBuilder();
+		for(WebhookInvocationResult result : results) {
+			if(args.size() > 4) {
+				sql.append(",");
+				messages.append(",");
+			}
+			sql.append("(CAST(? AS INT8), CAST(? AS VARCHAR), CAST(? AS INT4), CAST(? AS INT8))");
+			messages.append("?");
+			args.add(result.getMessagePK());
+			args.add(result.getMessageState().name());
+			args.add(result.getHttpStatus());
+			args.add(result.getExecTime());
+		}
+		sql.append(") AS r (message_id, state, httpstatus, exectime) "+
+				   "WHERE r.message_id = wm.message_id), "+
+				   "tsmodified = now(), leaseowner = NULL, tsleaseexpiry = NULL "+
+				   "WHERE wm.webhook_id = ? "+
+				   "AND wm.message_id IN (").append(messages).append(") "+
+				   "AND wm.state = 'IN_PROGRESS' "+
+				   "AND wm.leaseowner = ?");
+		args.add(batch.getWebhookPK());
+		for(WebhookInvocationResult result : results) {
+			args.add(result.getMessagePK());
+		}
+		args.add(NODE_ID);
 		
-		LOG.warning(() -> format("%s message (%s) processing by webhook %s (%s %s) failed after %.3f seconds with status %d %s",
-						   		 invocation.getEventName(),
-						   		 invocation.getEventId(),
-						   		 batch.getWebhookName(),
-						   		 batch.getMethod(),
-						   		 invocation.getEndpoint(),
-						   		 duration/1000d,
-						   		 status.getStatusCode(),
-						   		 status.getReasonPhrase()));
-
-		Webhook_Message message = repository.find(Webhook_Message.class, 
-												  new Webhook_MessagePK(batch.getWebhookPK(), invocation.getMessagePK()));
-		message.setHttpStatus(status.getStatusCode());
-		message.setExecTime(duration);
-		message.setMessageState(FAILED);
+		db.executeUpdate(prepare(sql.toString(), args.toArray()));
+		LOG.fine(() -> format("%d message states of webhook %s updated.", 
+							  results.size(),
+							  batch.getWebhookName()));
 	}
 
-	public void invocationFailed(WebhookBatch batch, 
-								 WebhookInvocation invocation, 
-								 Exception cause,
-								 long start) {
-		long duration = currentTimeMillis() - start;
-		LOG.warning(() -> format("%s message (%s) processing by webhook %s (%s %s) failed after %.3f seconds due to %s %s",
-				   				 invocation.getEventName(),
-				   				 invocation.getEventId(),
-				   				 batch.getWebhookName(),
-				   				 batch.getMethod(),
-				   				 invocation.getEndpoint(),
-				   				 duration/1000d,
-				   				 cause.getClass().getSimpleName(),
-				   				 cause.getMessage()));
-
-		Webhook_Message message = repository.find(Webhook_Message.class, 
-												  new Webhook_MessagePK(batch.getWebhookPK(), invocation.getMessagePK()));
-		message.setMessageState(FAILED);
-		message.setExecTime(duration);
+	/**
+	 * Returns messages with an expired lease to the webhook queue.
+	 * <p>
+	 * A lease expires if the claiming node crashed or failed to write the invocation results.
+	 * At most <code>leitstand.webhook.lease.reaper.batch.size</code> messages are released by a single call
+	 * to keep the update short.
+	 * @return the number of released messages.
+	 */
+	public int releaseExpiredLeases() {
+		List<Integer> released = db.executeQuery(prepare("WITH expired AS ("+
+														 "SELECT wm.webhook_id, wm.message_id "+
+														 "FROM bus.webhook_message wm "+
+														 "WHERE wm.state = 'IN_PROGRESS' "+
+														 "AND wm.tsleaseexpiry < now() "+
+														 "ORDER BY wm.tsleaseexpiry "+
+														 "LIMIT ? "+
+														 "FOR UPDATE SKIP LOCKED), "+
+													 "released AS ("+
+														 "UPDATE bus.webhook_message wm "+
+														 "SET state = 'READY', leaseowner = NULL, tsleaseexpiry = NULL, tsmodified = now() "+
+														 "FROM expired e "+
+														 "WHERE wm.webhook_id = e.webhook_id "+
+														 "AND wm.message_id = e.message_id "+
+														 "RETURNING wm.webhook_id) "+
+													 "SELECT count(*) FROM released",
+													 LEASE_REAPER_BATCH_SIZE),
+												 rs -> rs.getInt(1));
+		int count = released.isEmpty() ? 0 : released.get(0);
+		if(count > 0) {
+			LOG.info(() -> format("%d messages with expired lease returned to the webhook queue.", count));
+		}
+		return count;
 	}
-
+	
+	/**
+	 * Writes all messages that were published since the last execution to the webhook queues.
+	 * <p>
+	 * Each webhook maintains a cursor in the <code>bus.webhook_cursor</code> table pointing to the oldest transaction
+	 * that might still publish messages not yet scanned for this webhook. A fan-out pass only scans the messages 
+	 * of this and all younger transactions, so that the costs grow with the number of new messages rather than with the size of the message table.
+	 * The cursor never advances beyond the oldest transaction in progress. 
+	 * Hence, a message committed after a message with a higher message ID is never skipped.
+	 */
 	public void populateWebhookQueues() {
-		// Write all messages that occurred since the last execution to the webhook queues.
-		int messages = db.executeUpdate(prepare("INSERT INTO bus.webhook_message (webhook_id, message_id, state) "+
-												"SELECT w.id, m.id, 'READY' "+
-												"FROM bus.message m "+
-												"JOIN bus.webhook w "+
-												"ON m.topic_id = w.topic_id "+
-												"WHERE NOT EXISTS (SELECT wm FROM bus.webhook_message wm WHERE wm.message_id = m.id) "+
-												"AND (m.name ~ w.selector OR w.selector is null)"));
-		LOG.fine(() -> format("%d messages added to the webhook queue",messages));
+		// Create a cursor for all new webhooks. 
+		// A new webhook starts with the transactions in progress, 
+		// a webhook with an existing queue continues with the transaction of the last queued message. 
+		db.executeUpdate(prepare("INSERT INTO bus.webhook_cursor (webhook_id, txid) "+
+								 "SELECT w.id, COALESCE((SELECT max(m.txid) FROM bus.webhook_message wm JOIN bus.message m ON m.id = wm.message_id WHERE wm.webhook_id = w.id), "+
+								 					   "txid_snapshot_xmin(txid_current_snapshot())) "+
+								 "FROM bus.webhook w "+
+								 "WHERE NOT EXISTS (SELECT 1 FROM bus.webhook_cursor c WHERE c.webhook_id = w.id) "+
+								 "ON CONFLICT (webhook_id) DO NOTHING"));
+		
+		// Write all messages after the cursor to the webhook queue.
+		// Move the cursor past the last scanned transaction, but not beyond the oldest transaction in progress.
+		// Messages of transactions committed after the oldest transaction in progress are scanned again until the cursor passes them.
+		List<Integer> messages = db.executeQuery(prepare("WITH horizon AS ("+
+														 "SELECT txid_snapshot_xmin(txid_current_snapshot()) AS txid), "+
+														 "scan AS ("+
+														 "SELECT c.webhook_id, m.id AS message_id, m.txid, (w.selector IS NULL OR m.name ~ w.selector) AS selected "+
+														 "FROM bus.webhook_cursor c "+
+														 "JOIN bus.webhook w "+
+														 "ON c.webhook_id = w.id "+
+														 "JOIN bus.message m "+
+														 "ON m.topic_id = w.topic_id "+
+														 "AND m.txid >= c.txid), "+
+													 "queued AS ("+
+														 "INSERT INTO bus.webhook_message (webhook_id, message_id, state) "+
+														 "SELECT webhook_id, message_id, 'READY' "+
+														 "FROM scan "+
+														 "WHERE selected "+
+														 "ON CONFLICT (webhook_id, message_id) DO NOTHING "+
+														 "RETURNING webhook_id), "+
+													 "advanced AS ("+
+														 "UPDATE bus.webhook_cursor c "+
+														 "SET txid = s.txid "+
+														 "FROM (SELECT webhook_id, LEAST(max(txid) + 1, (SELECT txid FROM horizon)) AS txid FROM scan GROUP BY webhook_id) s "+
+														 "WHERE c.webhook_id = s.webhook_id "+
+														 "AND c.txid < s.txid) "+
+													 "SELECT count(*) FROM queued"),
+												 rs -> rs.getInt(1));
+		LOG.fine(() -> format("%d messages added to the webhook queue",messages.get(0)));
 	}
 
 }
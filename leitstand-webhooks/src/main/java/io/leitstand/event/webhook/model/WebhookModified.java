@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import io.leitstand.commons.model.ValueObject;
+import io.leitstand.event.webhook.service.WebhookId;
+import io.leitstand.event.webhook.service.WebhookName;
+
+/**
+ * Informs about a webhook that has been added, modified, enabled, disabled or removed.
+ * <p>
+ * The {@link DefaultWebhookService} fires a <code>WebhookModified</code> CDI event for every webhook configuration change.
+ * @see WebhookRegistry
+ */
+public class WebhookModified extends ValueObject {
+
+	static WebhookModified webhookModified(Webhook webhook) {
+		WebhookModified event = new WebhookModified();
+		event.webhookId = webhook.getWebhookId();
+		event.webhookName = webhook.getWebhookName();
+		return event;
+	}
+	
+	private WebhookId webhookId;
+	private WebhookName webhookName;
+	
+	/**
+	 * Returns the ID of the modified webhook.
+	 * @return the webhook ID.
+	 */
+	public WebhookId getWebhookId() {
+		return webhookId;
+	}
+	
+	/**
+	 * Returns the name of the modified webhook.
+	 * @return the webhook name.
+	 */
+	public WebhookName getWebhookName() {
+		return webhookName;
+	}
+	
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.min;
+
+/**
+ * Token bucket to limit the request rate of a single webhook.
+ * <p>
+ * The bucket holds up to burst-size tokens and is refilled with the configured number of tokens per second.
+ * Every claimed message consumes a token. 
+ * The token of a claimed message that has not been sent is returned to the bucket.
+ * The bucket is refilled lazily when tokens are requested, i.e. no timer is needed to refill the bucket.
+ */
+class WebhookRateLimiter {
+
+	private double rate;
+	private int burst;
+	private double tokens;
+	private long refilled;
+	
+	/**
+	 * Creates a full token bucket.
+	 * @param rate the number of tokens per second
+	 * @param burst the bucket capacity
+	 * @param now the current time in milliseconds
+	 */
+	WebhookRateLimiter(double rate, int burst, long now) {
+		this.rate = rate;
+		this.burst = burst;
+		this.tokens = burst;
+		this.refilled = now;
+	}
+	
+	/**
+	 * Updates the rate and the capacity of the bucket.
+	 * @param rate the number of tokens per second
+	 * @param burst the bucket capacity
+	 * @param now the current time in milliseconds
+	 */
+	synchronized void configure(double rate, int burst, long now) {
+		if(this.rate != rate || this.burst != burst) {
+			refill(now);
+			this.rate = rate;
+			this.burst = burst;
+			this.tokens = min(tokens, burst);
+		}
+	}
+	
+	/**
+	 * Returns the number of available tokens.
+	 * @param now the current time in milliseconds
+	 * @return the number of available tokens.
+	 */
+	synchronized int available(long now) {
+		refill(now);
+		return (int) tokens;
+	}
+	
+	/**
+	 * Consumes the given number of tokens.
+	 * @param permits the number of tokens
+	 * @param now the current time in milliseconds
+	 */
+	synchronized void acquire(int permits, long now) {
+		refill(now);
+		tokens -= permits;
+	}
+	
+	/**
+	 * Returns the given number of unused tokens to the bucket.
+	 * @param permits the number of tokens
+	 * @param now the current time in milliseconds
+	 */
+	synchronized void release(int permits, long now) {
+		refill(now);
+		tokens = min(burst, tokens + permits);
+	}
+	
+	/**
+	 * Returns the time until the next token is available.
+	 * @param now the current time in milliseconds
+	 * @return the number of milliseconds until the next token is available, 
+	 * <code>0</code> if a token is available.
+	 */
+	synchronized long delay(long now) {
+		refill(now);
+		if(tokens >= 1) {
+			return 0;
+		}
+		return (long) ceil((1 - tokens) * 1000 / rate);
+	}
+	
+	private void refill(long now) {
+		if(now > refilled) {
+			tokens = min(burst, tokens + (now - refilled) * rate / 1000);
+			refilled = now;
+		}
+	}
+	
+}
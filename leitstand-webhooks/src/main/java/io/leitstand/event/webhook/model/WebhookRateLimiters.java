@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static java.lang.Integer.MAX_VALUE;
+import static java.lang.System.currentTimeMillis;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Maintains a {@link WebhookRateLimiter} for every rate-limited webhook.
+ * <p>
+ * The rate limit is enforced when messages are claimed. 
+ * The event loop claims no more messages than the token bucket of a webhook allows,
+ * such that a rate-limited webhook neither blocks a thread nor holds messages in progress while waiting for tokens.
+ * The tokens of claimed messages that have not been sent, 
+ * e.g. because the circuit breaker rejected them, a <code>Retry-After</code> header paused the webhook 
+ * or the batch was cancelled, are returned to the bucket when the batch has been processed.
+ * <p>
+ * The rate limiters are maintained per node.
+ */
+@ApplicationScoped
+public class WebhookRateLimiters {
+
+	private final ConcurrentMap<Long,WebhookRateLimiter> limiters = new ConcurrentHashMap<>();
+	
+	private WebhookRateLimiter limiter(WebhookConfiguration webhook, long now) {
+		WebhookRateLimiter limiter = limiters.computeIfAbsent(webhook.getWebhookPK(), 
+															  pk -> new WebhookRateLimiter(webhook.getRateLimit(),
+																		  				   webhook.getRateBurst(),
+																		  				   now));
+		// Apply modified rate limit settings.
+		limiter.configure(webhook.getRateLimit(), webhook.getRateBurst(), now);
+		return limiter;
+	}
+	
+	/**
+	 * Returns the number of messages that can be claimed for the given webhook without exceeding the rate limit.
+	 * @param webhook the webhook configuration
+	 * @return the number of messages that can be claimed or {@link Integer#MAX_VALUE} if the webhook is not rate-limited.
+	 */
+	int available(WebhookConfiguration webhook) {
+		if(!webhook.isRateLimited()) {
+			limiters.remove(webhook.getWebhookPK());
+			return MAX_VALUE;
+		}
+		return limiter(webhook, currentTimeMillis()).available(currentTimeMillis());
+	}
+	
+	/**
+	 * Consumes a token for every claimed message of the given webhook.
+	 * @param webhook the webhook configuration
+	 * @param claimed the number of claimed messages
+	 */
+	void acquire(WebhookConfiguration webhook, int claimed) {
+		if(webhook.isRateLimited()) {
+			limiter(webhook, currentTimeMillis()).acquire(claimed, currentTimeMillis());
+		}
+	}
+	
+	/**
+	 * Returns the tokens of claimed messages that have not been sent to the webhook endpoint.
+	 * @param batch the processed webhook batch
+	 * @param unsent the number of messages that have not been sent
+	 */
+	void release(WebhookBatch batch, int unsent) {
+		WebhookRateLimiter limiter = limiters.get(batch.getWebhookPK());
+		if(limiter != null && unsent > 0) {
+			limiter.release(unsent, currentTimeMillis());
+		}
+	}
+	
+	/**
+	 * Returns the time until the next token of a throttled webhook is available.
+	 * The event loop polls for new messages when the next token is available, 
+	 * instead of waiting for a new domain event or the next regular poll.
+	 * @return the number of milliseconds until the next token is available, 
+	 * <code>0</code> if no webhook is throttled.
+	 */
+	long getThrottleDelay() {
+		long now = currentTimeMillis();
+		long delay = 0;
+		for(WebhookRateLimiter limiter : limiters.values()) {
+			long next = limiter.delay(now);
+			if(next > 0 && (delay == 0 || next < delay)) {
+				delay = next;
+			}
+		}
+		return delay;
+	}
+	
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static io.leitstand.commons.model.ByteArrayUtil.decodeBase64String;
+import static io.leitstand.commons.model.ObjectUtil.optional;
+import static io.leitstand.commons.model.StringUtil.fromUtf8Bytes;
+import static io.leitstand.commons.model.StringUtil.isNonEmptyString;
+import static io.leitstand.event.webhook.model.Webhook.findAllEnabledWebhooks;
+import static io.leitstand.event.webhook.model.WebhookConfiguration.newWebhookConfiguration;
+import static io.leitstand.security.auth.UserName.userName;
+import static java.lang.Integer.parseInt;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Collections.unmodifiableCollection;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.security.enterprise.credential.Password;
+
+import io.leitstand.commons.model.Repository;
+import io.leitstand.security.auth.UserName;
+import io.leitstand.security.crypto.MasterSecret;
+
+/**
+ * Maintains an immutable snapshot of the configuration of all enabled webhooks.
+ * <p>
+ * The snapshot is rebuilt when a webhook has been modified, such that the webhook event loop 
+ * neither queries the webhook configuration, decrypts webhook credentials nor compiles endpoint templates when polling for new messages.
+ * A webhook modification on another leitstand node is not reported to this registry.
+ * Therefore the registry also rebuilds the snapshot when the snapshot is older than the interval set by the 
+ * <code>leitstand.webhook.registry.refresh.interval</code> system property (default: 60 seconds).
+ */
+@ApplicationScoped
+public class WebhookRegistry {
+
+	private static final Logger LOG = Logger.getLogger(WebhookRegistry.class.getName());
+	private static final int REFRESH_INTERVAL = parseInt(getSystemProperty("leitstand.webhook.registry.refresh.interval", "60"));
+	
+	/**
+	 * An immutable snapshot of the enabled webhooks.
+	 */
+	static final class Snapshot {
+		private final long version;
+		private final long dateCreated;
+		private final Map<Long,WebhookConfiguration> webhooks;
+		
+		Snapshot(long version, long dateCreated, Map<Long,WebhookConfiguration> webhooks) {
+			this.version = version;
+			this.dateCreated = dateCreated;
+			this.webhooks = webhooks;
+		}
+		
+		long getVersion() {
+			return version;
+		}
+		
+		Collection<WebhookConfiguration> getWebhooks() {
+			return unmodifiableCollection(webhooks.values());
+		}
+		
+		WebhookConfiguration getWebhook(Long webhookPK) {
+			return webhooks.get(webhookPK);
+		}
+	}
+	
+	@Inject
+	@Webhooks
+	private Repository repository;
+	
+	@Inject
+	private MasterSecret secret;
+	
+	@Inject
+	private WebhookRewritingService rewriter;
+	
+	private long refreshIntervalMillis = SECONDS.toMillis(REFRESH_INTERVAL);
+	private final AtomicLong modifications = new AtomicLong();
+	private volatile Snapshot snapshot;
+	
+	protected WebhookRegistry() {
+		// CDI
+	}
+	
+	WebhookRegistry(Repository repository, 
+					MasterSecret secret,
+					WebhookRewritingService rewriter,
+					long refreshIntervalMillis) {
+		this.repository = repository;
+		this.secret = secret;
+		this.rewriter = rewriter;
+		this.refreshIntervalMillis = refreshIntervalMillis;
+	}
+	
+	/**
+	 * Invalidates the snapshot when a webhook modification has been committed.
+	 * @param event the webhook modification event
+	 */
+	void onWebhookModified(@Observes(during=AFTER_SUCCESS) WebhookModified event) {
+		LOG.fine(() -> format("Webhook %s modified. Invalidate webhook configuration snapshot.",
+							  event.getWebhookName()));
+		modifications.incrementAndGet();
+	}
+	
+	/**
+	 * Returns the current snapshot of the enabled webhooks.
+	 * Rebuilds the snapshot if a webhook has been modified or the snapshot has expired.
+	 * @return the snapshot of all enabled webhooks.
+	 */
+	Snapshot getSnapshot() {
+		Snapshot current = snapshot;
+		long version = modifications.get();
+		if(current == null 
+		   || current.version != version 
+		   || currentTimeMillis() - current.dateCreated > refreshIntervalMillis) {
+			current = loadSnapshot(version);
+			snapshot = current;
+		}
+		return current;
+	}
+	
+	private Snapshot loadSnapshot(long version) {
+		Map<Long,WebhookConfiguration> webhooks = new LinkedHashMap<>();
+		for(Webhook webhook : repository.execute(findAllEnabledWebhooks())) {
+			webhooks.put(webhook.getId(), configuration(webhook));
+		}
+		LOG.fine(() -> format("Loaded configuration snapshot %d of %d enabled webhooks.",
+							  version,
+							  webhooks.size()));
+		return new Snapshot(version, currentTimeMillis(), webhooks);
+	}
+	
+	private WebhookConfiguration configuration(Webhook webhook) {
+		UserName userName = null;
+		String password = null;
+		String accesskey = null;
+		if(webhook.isBasicAuthentication()) {
+			userName = userName(webhook.getUser());
+			password = fromUtf8Bytes(secret.decrypt(decodeBase64String(webhook.getPassword64())));
+		} else if (isNonEmptyString(webhook.getAccessKey64())) {
+			accesskey = fromUtf8Bytes(secret.decrypt(decodeBase64String(webhook.getAccessKey64())));
+		}
+		return newWebhookConfiguration()
+			   .withWebhookPK(webhook.getId())
+			   .withWebhookId(webhook.getWebhookId())
+			   .withWebhookName(webhook.getWebhookName())
+			   .withTopicName(webhook.getTopicName())
+			   .withEndpoint(webhook.getEndpoint())
+			   .withEndpointTemplate(rewriter.compileEndpoint(webhook.getEndpoint()))
+			   .withHttpMethod(webhook.getHttpMethod())
+			   .withBatchSize(webhook.getBatchSize())
+			   .withErrorPolicy(webhook.getErrorPolicy())
+			   .withRateLimit(webhook.getRateLimit())
+			   .withRateBurst(webhook.getRateBurst())
+			   .withMaxBatchSize(webhook.getMaxBatchSize())
+			   .withDeliveryMode(webhook.getDeliveryMode())
+			   .withCompression(webhook.getCompression())
+			   .withConnectTimeout(webhook.getConnectTimeout())
+			   .withReadTimeout(webhook.getReadTimeout())
+			   .withCallTimeout(webhook.getCallTimeout())
+			   .withUserName(userName)
+			   .withPassword(optional(password, Password::new))
+			   .withAccesskey(accesskey)
+			   .build();
+	}
+	
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of concurrent requests to a single host.
+ * <p>
+ * A blocking request waits for a permit in the calling thread.
+ * A non-blocking request obtains a future that is completed as soon as a permit is available.
+ * The waiting non-blocking requests are served in arrival order whenever a permit is released.
+ */
+class WebhookRequestPermits {
+
+	private final Semaphore permits;
+	private final Queue<CompletableFuture<Void>> waiting = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Creates the request permits of a host.
+	 * @param permits the maximum number of concurrent requests
+	 */
+	WebhookRequestPermits(int permits) {
+		this.permits = new Semaphore(permits);
+	}
+
+	/**
+	 * Waits for a permit.
+	 * @throws InterruptedException if the calling thread was interrupted while waiting for a permit
+	 */
+	void acquire() throws InterruptedException {
+		permits.acquire();
+	}
+
+	/**
+	 * Returns a future that is completed when a permit has been acquired.
+	 * Cancelling the future before it is completed withdraws the request for a permit.
+	 * @return the future permit.
+	 */
+	CompletableFuture<Void> acquireAsync() {
+		if(permits.tryAcquire()) {
+			return completedFuture(null);
+		}
+		CompletableFuture<Void> permit = new CompletableFuture<>();
+		waiting.add(permit);
+		// A permit might have been released before the request was queued.
+		serveWaiting();
+		return permit;
+	}
+
+	/**
+	 * Returns a permit and passes it on to the next waiting non-blocking request, if any.
+	 */
+	void release() {
+		permits.release();
+		serveWaiting();
+	}
+
+	private void serveWaiting() {
+		while(!waiting.isEmpty() && permits.tryAcquire()) {
+			CompletableFuture<Void> permit = waiting.poll();
+			if(permit == null || !permit.complete(null)) {
+				// The request was cancelled or served by another thread.
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of available permits.
+	 * @return the number of available permits.
+	 */
+	int availablePermits() {
+		return permits.availablePermits();
+	}
+
+}
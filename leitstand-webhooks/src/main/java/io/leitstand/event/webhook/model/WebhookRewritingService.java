@@ -15,8 +15,10 @@
  */
 package io.leitstand.event.webhook.model;
 
-import static io.leitstand.commons.json.MapUnmarshaller.unmarshal;
 import static io.leitstand.commons.template.TemplateProcessor.plain;
+import static io.leitstand.event.webhook.model.EndpointTemplate.constant;
+import static io.leitstand.event.webhook.model.EndpointTemplate.isTemplate;
+import static io.leitstand.event.webhook.model.EndpointTemplate.template;
 
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
@@ -37,9 +39,25 @@ public class WebhookRewritingService {
 	}
 	
 	public Endpoint rewriteEndpoint(Webhook webhook, JsonObject payload) {
-		Endpoint endpoint = webhook.getEndpoint();
+		return rewriteEndpoint(webhook.getEndpoint(), payload);
+	}
+	
+	public Endpoint rewriteEndpoint(Endpoint endpoint, JsonObject payload) {
+		return compileEndpoint(endpoint).apply(payload);
+	}
+	
+	/**
+	 * Compiles the given endpoint URL template.
+	 * Constant endpoint URLs are not compiled at all.
+	 * @param endpoint the endpoint URL template
+	 * @return the compiled endpoint URL template.
+	 */
+	EndpointTemplate compileEndpoint(Endpoint endpoint) {
+		if(!isTemplate(endpoint)) {
+			return constant(endpoint);
+		}
 		Template<String> template = templates.compileTemplate(endpoint.getValue(), plain());
-		return Endpoint.valueOf(template.apply(unmarshal(payload).toMap()));
+		return template(endpoint, template);
 	}
 	
 }
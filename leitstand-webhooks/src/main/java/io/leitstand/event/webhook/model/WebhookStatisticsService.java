@@ -33,14 +33,22 @@ import io.leitstand.event.webhook.service.WebhookStatistics;
 public class WebhookStatisticsService {
 
 	private DatabaseService db;
+	
+	private WebhookCircuitBreakers breakers;
+	
+	private WebhookBatchSizes batchSizes;
 
 	protected WebhookStatisticsService() {
 		// CDI
 	}
 	
 	@Inject
-	public WebhookStatisticsService(@Webhooks DatabaseService db) {
+	public WebhookStatisticsService(@Webhooks DatabaseService db,
+									WebhookCircuitBreakers breakers,
+									WebhookBatchSizes batchSizes) {
 		this.db = db;
+		this.breakers = breakers;
+		this.batchSizes = batchSizes;
 	}
 
 	public WebhookStatistics getWebhookStatistics(Webhook hook) {
@@ -65,6 +73,8 @@ public class WebhookStatisticsService {
 			   .withEnabled(hook.isEnabled())
 			   .withDescription(hook.getDescription())
 			   .withStatistics(stats)
+			   .withCircuitBreakerState(breakers.getCircuitBreakerState(hook.getId()))
+			   .withBatchSize(batchSizes.getBatchSize(hook))
 			   .build();
 	}
 	
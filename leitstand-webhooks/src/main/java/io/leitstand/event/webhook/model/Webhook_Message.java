@@ -58,9 +58,9 @@ import io.leitstand.event.webhook.service.MessageState;
 @NamedQuery(name="Webhook_Message.findMessagesInStateByCorrelationId",
 			query="SELECT m FROM Webhook_Message m JOIN FETCH m.message WHERE m.webhook=:webhook AND (m.message.correlationId=:correlationId OR m.message.uuid=:eventId)  AND m.state=:state ORDER BY m.webhook.id, m.message.id DESC")
 @NamedQuery(name="Webhook_Message.resetFailedCalls",
-			query="UPDATE Webhook_Message m SET m.state=io.leitstand.event.webhook.service.MessageState.READY,m.execTime=NULL,m.httpStatus=NULL WHERE m.webhook=:webhook AND m.state=io.leitstand.event.webhook.service.MessageState.FAILED")
+			query="UPDATE Webhook_Message m SET m.state=io.leitstand.event.webhook.service.MessageState.READY,m.execTime=NULL,m.httpStatus=NULL,m.attempts=0,m.tsnextattempt=NULL,m.leaseOwner=NULL,m.tsleaseexpiry=NULL WHERE m.webhook=:webhook AND m.state=io.leitstand.event.webhook.service.MessageState.FAILED")
 @NamedQuery(name="Webhook_Message.resetWebhook",
-			query="UPDATE Webhook_Message m SET m.state=io.leitstand.event.webhook.service.MessageState.READY,m.execTime=NULL,m.httpStatus=NULL WHERE m.webhook=:webhook AND m.message.id >= :message")
+			query="UPDATE Webhook_Message m SET m.state=io.leitstand.event.webhook.service.MessageState.READY,m.execTime=NULL,m.httpStatus=NULL,m.attempts=0,m.tsnextattempt=NULL,m.leaseOwner=NULL,m.tsleaseexpiry=NULL WHERE m.webhook=:webhook AND m.message.id >= :message")
 public class Webhook_Message {
 	
 	public static Update resetWebhookCalls(Webhook webhook, Message message) {
@@ -137,6 +137,12 @@ public class Webhook_Message {
 	@Temporal(TIMESTAMP)
 	private Date tsmodified;
 	private Long execTime;
+	private String leaseOwner;
+	@Temporal(TIMESTAMP)
+	private Date tsleaseexpiry;
+	private Integer attempts;
+	@Temporal(TIMESTAMP)
+	private Date tsnextattempt;
 	
 	protected Webhook_Message() {
 		// JPA
@@ -184,6 +190,22 @@ public class Webhook_Message {
 	public Long getExecutionTime() {
 		return this.execTime;
 	}
+	
+	public String getLeaseOwner() {
+		return leaseOwner;
+	}
+	
+	public Date getDateLeaseExpiry() {
+		return tsleaseexpiry;
+	}
+	
+	public int getAttempts() {
+		return attempts != null ? attempts : 0;
+	}
+	
+	public Date getDateNextAttempt() {
+		return tsnextattempt;
+	}
 
 	public String getCorrelationId() {
 		return message.getCorrelationId();
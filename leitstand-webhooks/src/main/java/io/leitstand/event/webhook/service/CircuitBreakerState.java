@@ -0,0 +1,30 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.service;
+
+/**
+ * Enumeration of webhook circuit breaker states.
+ * <p>
+ * The circuit breaker protects the event loop from webhook endpoints that fail or respond slowly.
+ */
+public enum CircuitBreakerState {
+	/** The webhook endpoint is healthy and all messages are forwarded.*/
+	CLOSED,
+	/** The webhook endpoint is considered unavailable and no messages are forwarded.*/
+	OPEN,
+	/** Probe requests are forwarded to test whether the webhook endpoint has recovered.*/
+	HALF_OPEN
+}
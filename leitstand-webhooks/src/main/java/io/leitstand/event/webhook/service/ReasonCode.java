@@ -70,7 +70,39 @@ public enum ReasonCode implements Reason{
 	WHK0100I_WEBHOOK_EVENT_LOOP_STARTED,
 	
 	/** The webhook event loop has been stopped.*/
-	WHK0101I_WEBHOOK_EVENT_LOOP_STOPPED;
+	WHK0101I_WEBHOOK_EVENT_LOOP_STOPPED,
+	
+	/** The webhook event notifier listens for domain events committed by other nodes.*/
+	WHK0102I_WEBHOOK_EVENT_NOTIFIER_LISTENING,
+	
+	/** 
+	 * The webhook event notifier lost the connection to the database.
+	 * The event loop falls back to polling until the connection is restored.
+	 */
+	WHK0103E_WEBHOOK_EVENT_NOTIFIER_DISCONNECTED,
+	
+	/**
+	 * The circuit breaker of a webhook has been opened because the webhook endpoint fails or responds too slowly.
+	 * No messages are forwarded to the endpoint until the circuit breaker is closed again.
+	 */
+	WHK0104E_WEBHOOK_CIRCUIT_BREAKER_OPENED,
+	
+	/** The circuit breaker of a webhook has been closed because the webhook endpoint has recovered.*/
+	WHK0105I_WEBHOOK_CIRCUIT_BREAKER_CLOSED,
+	
+	/** A webhook has been disabled because its circuit breaker tripped repeatedly.*/
+	WHK0106E_WEBHOOK_DISABLED_BY_CIRCUIT_BREAKER,
+	
+	/** 
+	 * A webhook invocation has been cancelled because the webhook endpoint did not respond within the invocation deadline.
+	 */
+	WHK0107E_WEBHOOK_INVOCATION_TIMED_OUT,
+	
+	/**
+	 * The webhook event notifier failed to notify the other nodes about a committed domain event.
+	 * The event loops of the other nodes pick up the domain event with their next poll.
+	 */
+	WHK0108E_WEBHOOK_EVENT_NOTIFICATION_FAILED;
 	
 	private static final ResourceBundle MESSAGES = ResourceBundle.getBundle("WebhookMessages");
 	
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.service;
+
+/**
+ * Enumeration of webhook request entity compression algorithms.
+ */
+public enum WebhookCompression {
+	/** Send uncompressed request entities.*/
+	NONE(null),
+	/** Compress request entities with gzip.*/
+	GZIP("gzip"),
+	/** Compress request entities with deflate (zlib format).*/
+	DEFLATE("deflate");
+	
+	private final String contentEncoding;
+	
+	private WebhookCompression(String contentEncoding) {
+		this.contentEncoding = contentEncoding;
+	}
+	
+	/**
+	 * Returns the <code>Content-Encoding</code> header value of a compressed request entity.
+	 * @return the content encoding or <code>null</code> if request entities are not compressed.
+	 */
+	public String getContentEncoding() {
+		return contentEncoding;
+	}
+	
+}
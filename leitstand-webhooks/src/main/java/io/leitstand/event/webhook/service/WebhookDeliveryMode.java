@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.service;
+
+/**
+ * Enumeration of webhook delivery modes.
+ * <p>
+ * The delivery mode controls whether the event loop sends a dedicated request for every message 
+ * or a single request for all messages of a batch.
+ */
+public enum WebhookDeliveryMode {
+	/** Send a dedicated request for every message.*/
+	SINGLE(null),
+	/** Send all messages of a batch as JSON array in a single request.*/
+	JSON_ARRAY("application/json"),
+	/** Send all messages of a batch as newline-delimited JSON in a single request.*/
+	NDJSON("application/x-ndjson");
+	
+	private final String contentType;
+	
+	private WebhookDeliveryMode(String contentType) {
+		this.contentType = contentType;
+	}
+	
+	/**
+	 * Returns the content type of a batch request.
+	 * @return the content type of a batch request or <code>null</code> if every message is sent in a dedicated request.
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+	
+	/**
+	 * Returns whether all messages of a batch are sent in a single request.
+	 * @return <code>true</code> if all messages of a batch are sent in a single request, <code>false</code> otherwise.
+	 */
+	public boolean isBatchDelivery() {
+		return this != SINGLE;
+	}
+}
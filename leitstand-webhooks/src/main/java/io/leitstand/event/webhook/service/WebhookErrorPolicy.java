@@ -15,7 +15,14 @@
  */
 package io.leitstand.event.webhook.service;
 
+/**
+ * Enumeration of webhook error policies.
+ * <p>
+ * The error policy controls how the event loop reacts when the circuit breaker of a webhook trips repeatedly.
+ */
 public enum WebhookErrorPolicy {
+	/** Keep the webhook enabled and probe the endpoint until it has recovered.*/
 	IGNORE,
+	/** Disable the webhook.*/
 	DISABLE
 }
@@ -16,9 +16,13 @@
 package io.leitstand.event.webhook.service;
 
 import static io.leitstand.commons.model.BuilderUtil.assertNotInvalidated;
+import static io.leitstand.event.webhook.service.WebhookCompression.NONE;
+import static io.leitstand.event.webhook.service.WebhookDeliveryMode.SINGLE;
+import static io.leitstand.event.webhook.service.WebhookErrorPolicy.IGNORE;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
 
 /**
  * General webhook settings.
@@ -36,6 +40,13 @@ import javax.validation.constraints.NotNull;
  *  <li>Access Key for HTTP endpoint bearer token authentication, i.e. an API access key.</li>
  *  <li>The batch size stating how many messages shall be invoked in within a single transaction. 
  *  All messages in the same batch are retried if one message in that batch cannot be processed.</li>
+ *  <li>The optional maximum batch size to let the event loop tune the batch size between the configured batch size and the maximum batch size.</li>
+ *  <li>The optional connect timeout, read timeout and invocation deadline.</li>
+ *  <li>The delivery mode stating whether all messages of a batch are sent in a single request.</li>
+ *  <li>The compression algorithm to compress request entities.</li>
+ *  <li>The error policy stating whether the webhook shall be disabled when the webhook endpoint fails repeatedly.</li>
+ *  <li>The optional rate limit stating how many requests per second can be sent to the HTTP endpoint and 
+ *  the burst size stating how many requests can be sent at once.</li>
  *</ul>
  * All sensitive data is stored AES encrypted and protected with the Leitstand master secret.
  */
@@ -124,6 +135,105 @@ public class WebhookSettings extends WebhookReference{
 			object.batchSize = batchSize;
 			return this;
 		}
+		
+		/**
+		 * Sets the maximum batch size of a webhook with adaptive batch size.
+		 * @param maxBatchSize the maximum batch size or <code>null</code> to disable the adaptive batch size.
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withMaxBatchSize(Integer maxBatchSize) {
+			assertNotInvalidated(getClass(), object);
+			object.maxBatchSize = maxBatchSize;
+			return this;
+		}
+		
+		/**
+		 * Sets the timeout to establish a connection to the HTTP endpoint.
+		 * @param connectTimeout the connect timeout in milliseconds or <code>null</code> to apply the default connect timeout.
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withConnectTimeout(Integer connectTimeout) {
+			assertNotInvalidated(getClass(), object);
+			object.connectTimeout = connectTimeout;
+			return this;
+		}
+		
+		/**
+		 * Sets the timeout to wait for the HTTP endpoint response.
+		 * @param readTimeout the read timeout in milliseconds or <code>null</code> to apply the default read timeout.
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withReadTimeout(Integer readTimeout) {
+			assertNotInvalidated(getClass(), object);
+			object.readTimeout = readTimeout;
+			return this;
+		}
+		
+		/**
+		 * Sets the deadline of a webhook invocation.
+		 * @param callTimeout the invocation deadline in milliseconds or <code>null</code> to apply the default deadline.
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withCallTimeout(Integer callTimeout) {
+			assertNotInvalidated(getClass(), object);
+			object.callTimeout = callTimeout;
+			return this;
+		}
+		
+		/**
+		 * Sets the delivery mode.
+		 * @param deliveryMode the delivery mode
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withDeliveryMode(WebhookDeliveryMode deliveryMode) {
+			assertNotInvalidated(getClass(), object);
+			object.deliveryMode = deliveryMode;
+			return this;
+		}
+		
+		/**
+		 * Sets the request entity compression.
+		 * @param compression the compression algorithm
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withCompression(WebhookCompression compression) {
+			assertNotInvalidated(getClass(), object);
+			object.compression = compression;
+			return this;
+		}
+		
+		/**
+		 * Sets the error policy.
+		 * @param errorPolicy the error policy
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withErrorPolicy(WebhookErrorPolicy errorPolicy) {
+			assertNotInvalidated(getClass(), object);
+			object.errorPolicy = errorPolicy;
+			return this;
+		}
+		
+		/**
+		 * Sets the rate limit in requests per second.
+		 * @param rateLimit the rate limit or <code>null</code> if the HTTP endpoint has no rate limit.
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withRateLimit(Double rateLimit) {
+			assertNotInvalidated(getClass(), object);
+			object.rateLimit = rateLimit;
+			return this;
+		}
+		
+		/**
+		 * Sets the number of requests that can be sent at once without exceeding the rate limit.
+		 * @param rateBurst the burst size or <code>null</code> to derive the burst size from the rate limit.
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withRateBurst(Integer rateBurst) {
+			assertNotInvalidated(getClass(), object);
+			object.rateBurst = rateBurst;
+			return this;
+		}
 
 	}
 
@@ -143,6 +253,21 @@ public class WebhookSettings extends WebhookReference{
 	private String confirmPassword;
 	private String accesskey;
 	private int batchSize = 1;
+	@Positive(message="{batch_size_max.out_of_range}")
+	private Integer maxBatchSize;
+	private WebhookErrorPolicy errorPolicy = IGNORE;
+	private WebhookDeliveryMode deliveryMode = SINGLE;
+	private WebhookCompression compression = NONE;
+	@Positive(message="{connect_timeout.out_of_range}")
+	private Integer connectTimeout;
+	@Positive(message="{read_timeout.out_of_range}")
+	private Integer readTimeout;
+	@Positive(message="{call_timeout.out_of_range}")
+	private Integer callTimeout;
+	@Positive(message="{rate_limit.out_of_range}")
+	private Double rateLimit;
+	@Positive(message="{rate_burst.out_of_range}")
+	private Integer rateBurst;
 	
 	@NotNull(message="{method.required}")
 	private HttpMethod method;
@@ -212,4 +337,84 @@ public class WebhookSettings extends WebhookReference{
 		return batchSize;
 	}
 	
+	/**
+	 * Returns the maximum batch size of a webhook with adaptive batch size.
+	 * The event loop tunes the batch size between the configured batch size and the maximum batch size.
+	 * Returns <code>null</code> if the batch size is not adaptive.
+	 * @return the maximum batch size.
+	 */
+	public Integer getMaxBatchSize() {
+		return maxBatchSize;
+	}
+	
+	/**
+	 * Returns the timeout to establish a connection to the HTTP endpoint in milliseconds.
+	 * Returns <code>null</code> if the default connect timeout applies.
+	 * @return the connect timeout.
+	 */
+	public Integer getConnectTimeout() {
+		return connectTimeout;
+	}
+	
+	/**
+	 * Returns the timeout to wait for the HTTP endpoint response in milliseconds.
+	 * Returns <code>null</code> if the default read timeout applies.
+	 * @return the read timeout.
+	 */
+	public Integer getReadTimeout() {
+		return readTimeout;
+	}
+	
+	/**
+	 * Returns the deadline of a webhook invocation in milliseconds.
+	 * The deadline includes waiting for a connection, sending the request and reading the response.
+	 * Returns <code>null</code> if the default deadline applies.
+	 * @return the invocation deadline.
+	 */
+	public Integer getCallTimeout() {
+		return callTimeout;
+	}
+	
+	/**
+	 * Returns the delivery mode.
+	 * @return the delivery mode.
+	 */
+	public WebhookDeliveryMode getDeliveryMode() {
+		return deliveryMode;
+	}
+	
+	/**
+	 * Returns the request entity compression.
+	 * @return the compression algorithm.
+	 */
+	public WebhookCompression getCompression() {
+		return compression;
+	}
+	
+	/**
+	 * Returns the error policy.
+	 * @return the error policy.
+	 */
+	public WebhookErrorPolicy getErrorPolicy() {
+		return errorPolicy;
+	}
+	
+	/**
+	 * Returns the rate limit in requests per second.
+	 * Returns <code>null</code> if the HTTP endpoint has no rate limit.
+	 * @return the rate limit.
+	 */
+	public Double getRateLimit() {
+		return rateLimit;
+	}
+	
+	/**
+	 * Returns the number of requests that can be sent at once without exceeding the rate limit.
+	 * Returns <code>null</code> if the burst size is derived from the rate limit.
+	 * @return the burst size.
+	 */
+	public Integer getRateBurst() {
+		return rateBurst;
+	}
+	
 }
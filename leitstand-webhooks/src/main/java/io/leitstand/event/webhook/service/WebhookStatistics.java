@@ -25,6 +25,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
+import javax.json.bind.annotation.JsonbProperty;
+
 public class WebhookStatistics extends WebhookReference{
 
 	
@@ -58,6 +60,18 @@ public class WebhookStatistics extends WebhookReference{
 		
 		
 		
+		public Builder withCircuitBreakerState(CircuitBreakerState state) {
+			assertNotInvalidated(getClass(), object);
+			object.circuitBreakerState = state;
+			return this;
+		}
+		
+		public Builder withBatchSize(int batchSize) {
+			assertNotInvalidated(getClass(), object);
+			object.batchSize = batchSize;
+			return this;
+		}
+		
 		public WebhookStatistics build() {
 			assertNotInvalidated(getClass(), object);
 			object.totalMessageCount = object.statistics
@@ -76,6 +90,10 @@ public class WebhookStatistics extends WebhookReference{
 	
 	private Map<MessageState,MessageStateStatistics> statistics = new TreeMap<>();
 	private int totalMessageCount;
+	@JsonbProperty("circuit_breaker")
+	private CircuitBreakerState circuitBreakerState;
+	@JsonbProperty("batch_size")
+	private int batchSize;
 	
 	public Map<MessageState, MessageStateStatistics> getStatistics() {
 		return unmodifiableMap(statistics);
@@ -84,4 +102,21 @@ public class WebhookStatistics extends WebhookReference{
 	public int getMessageCount() {
 		return totalMessageCount;
 	}
+	
+	/**
+	 * Returns the circuit breaker state of the webhook on the node that computed the statistics.
+	 * @return the circuit breaker state.
+	 */
+	public CircuitBreakerState getCircuitBreakerState() {
+		return circuitBreakerState;
+	}
+	
+	/**
+	 * Returns the effective batch size of the webhook on the node that computed the statistics.
+	 * The effective batch size of a webhook with adaptive batch size is tuned by the event loop.
+	 * @return the effective batch size.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
 }
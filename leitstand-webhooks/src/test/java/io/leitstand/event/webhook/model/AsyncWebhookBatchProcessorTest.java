@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.event.webhook.service.MessageState.FAILED;
+import static io.leitstand.event.webhook.service.MessageState.PROCESSED;
+import static io.leitstand.event.webhook.service.WebhookSettings.HttpMethod.POST;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.event.webhook.service.Endpoint;
+
+public class AsyncWebhookBatchProcessorTest {
+
+	private WebhookBatch batch;
+	private WebhookInvocation first;
+	private WebhookInvocation second;
+	private WebhookEventLoop loop;
+	private WebhookClient client;
+	private AsyncWebhookBatchProcessor processor;
+	
+	private static WebhookInvocation invocation(String endpoint) {
+		WebhookInvocation invocation = mock(WebhookInvocation.class);
+		when(invocation.getEndpoint()).thenReturn(Endpoint.valueOf(endpoint));
+		when(invocation.getContentType()).thenReturn("application/json");
+		when(invocation.getMessage()).thenReturn("unittest");
+		return invocation;
+	}
+	
+	private static CompletableFuture<HttpResponse<String>> response(int statusCode){
+		HttpResponse<String> response = mock(HttpResponse.class);
+		when(response.statusCode()).thenReturn(statusCode);
+		return completedFuture(response);
+	}
+	
+	@Before
+	public void initTestEnvironment() {
+		batch = mock(WebhookBatch.class);
+		first = invocation("http://test.leitstand.io/first");
+		second = invocation("http://test.leitstand.io/second");
+		when(batch.getMethod()).thenReturn(POST);
+		when(batch.getWebhookInvocations()).thenReturn(asList(first,second));
+		loop = mock(WebhookEventLoop.class);
+		client = mock(WebhookClient.class);
+		processor = new AsyncWebhookBatchProcessor(loop, client, batch);
+	}
+	
+	@Test
+	public void record_invocation_results() {
+		when(client.sendAsync(any(HttpRequest.class))).thenReturn(response(200))
+													   .thenReturn(response(400));
+		
+		assertTrue(processor.dispatch().isDone());
+		
+		List<WebhookInvocationResult> results = processor.getResults();
+		assertSame(first,results.get(0).getInvocation());
+		assertEquals(PROCESSED,results.get(0).getMessageState());
+		assertSame(second,results.get(1).getInvocation());
+		assertEquals(FAILED,results.get(1).getMessageState());
+	}
+	
+	@Test
+	public void proceed_with_next_invocation_when_invocation_failed() {
+		when(client.sendAsync(any(HttpRequest.class))).thenReturn(failedFuture(new IOException("unittest")))
+													   .thenReturn(response(200));
+		
+		assertTrue(processor.dispatch().isDone());
+		
+		List<WebhookInvocationResult> results = processor.getResults();
+		assertEquals(FAILED,results.get(0).getMessageState());
+		assertEquals(PROCESSED,results.get(1).getMessageState());
+	}
+	
+	@Test
+	public void notify_loop_about_completed_batch() {
+		when(client.sendAsync(any(HttpRequest.class))).thenReturn(response(200));
+		
+		processor.run();
+		
+		verify(loop).batchCompleted(batch, processor.getResults());
+	}
+	
+}
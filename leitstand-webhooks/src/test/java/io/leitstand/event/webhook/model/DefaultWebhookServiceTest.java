@@ -41,6 +41,8 @@ import static org.mockito.Mockito.withSettings;
 
 import java.util.Base64;
 
+import javax.enterprise.event.Event;
+
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -92,6 +94,9 @@ public class DefaultWebhookServiceTest {
 	@Mock
 	private WebhookProvider webhooks;
 	
+	@Mock
+	private Event<WebhookModified> modified;
+	
 	@InjectMocks
 	private DefaultWebhookService service = new DefaultWebhookService();
 
@@ -309,6 +314,7 @@ public class DefaultWebhookServiceTest {
 
 		service.removeWebhook(hookId);
 		verify(repository).remove(webhook);
+		verify(modified).fire(any(WebhookModified.class));
 		assertThat(messageCaptor.getValue().getReason(),is(WHK0003I_WEBHOOK_REMOVED.getReasonCode()));
 	}
 	
@@ -319,10 +325,31 @@ public class DefaultWebhookServiceTest {
 
 		service.removeWebhook(WEBHOOK_NAME);
 		verify(repository).remove(webhook);
+		verify(modified).fire(any(WebhookModified.class));
 		assertThat(messageCaptor.getValue().getReason(),is(WHK0003I_WEBHOOK_REMOVED.getReasonCode()));
 
 	}
 	
+	@Test
+	public void fire_webhook_modified_event_when_webhook_was_disabled() {
+		Webhook webhook = mock(Webhook.class);
+		when(webhooks.fetchWebhook(WEBHOOK_NAME)).thenReturn(webhook);
+		
+		service.disableWebhook(WEBHOOK_NAME);
+		verify(webhook).disable();
+		verify(modified).fire(any(WebhookModified.class));
+	}
+	
+	@Test
+	public void fire_webhook_modified_event_when_webhook_was_enabled() {
+		Webhook webhook = mock(Webhook.class);
+		when(webhooks.fetchWebhook(WEBHOOK_NAME)).thenReturn(webhook);
+		
+		service.enableWebhook(WEBHOOK_NAME);
+		verify(webhook).enable();
+		verify(modified).fire(any(WebhookModified.class));
+	}
+	
 	@Test
 	public void throws_EntityNotFoundException_if_message_does_not_exist() {
 		exception.expect(EntityNotFoundException.class);
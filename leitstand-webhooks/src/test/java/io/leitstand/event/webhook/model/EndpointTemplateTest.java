@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.template.TemplateService.newTemplateService;
+import static io.leitstand.event.webhook.service.Endpoint.endpoint;
+import static javax.json.Json.createObjectBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.json.JsonObject;
+
+import org.junit.Test;
+
+import io.leitstand.event.webhook.service.Endpoint;
+
+public class EndpointTemplateTest {
+
+	private static final JsonObject EVENT = createObjectBuilder()
+											.add("event_name","ElementImageUpgraded")
+											.add("message", createObjectBuilder()
+															.add("element_name", "l1.pod1")
+															.add("image", createObjectBuilder()
+																		  .add("image_name","access-leaf-nos")
+																		  .add("image_version","2.1.3")))
+											.build();
+	
+	private WebhookRewritingService rewriter = new WebhookRewritingService(newTemplateService());
+	
+	@Test
+	public void constant_endpoint_is_not_compiled() {
+		Endpoint endpoint = endpoint("http://test.leitstand.io/api/v1/events");
+		EndpointTemplate template = rewriter.compileEndpoint(endpoint);
+		assertFalse(template.isTemplate());
+		assertSame(endpoint, template.apply(EVENT));
+	}
+	
+	@Test
+	public void resolve_placeholders() {
+		EndpointTemplate template = rewriter.compileEndpoint(endpoint("http://test.leitstand.io/api/v1/{{event_name}}/{{message.element_name}}/{{message.image.image_name}}-{{message.image.image_version}}"));
+		assertTrue(template.isTemplate());
+		assertEquals(endpoint("http://test.leitstand.io/api/v1/ElementImageUpgraded/l1.pod1/access-leaf-nos-2.1.3"),
+					 template.apply(EVENT));
+	}
+	
+}
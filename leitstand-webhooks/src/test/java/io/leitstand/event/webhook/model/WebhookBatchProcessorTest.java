@@ -15,36 +15,54 @@
  */
 package io.leitstand.event.webhook.model;
 
-import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
+import static io.leitstand.event.webhook.model.WebhookCircuitBreaker.REJECTED;
+import static io.leitstand.event.webhook.service.MessageState.FAILED;
+import static io.leitstand.event.webhook.service.MessageState.PROCESSED;
+import static io.leitstand.event.webhook.service.MessageState.READY;
+import static io.leitstand.event.webhook.service.WebhookCompression.GZIP;
+import static io.leitstand.event.webhook.service.WebhookDeliveryMode.JSON_ARRAY;
+import static io.leitstand.event.webhook.service.WebhookDeliveryMode.NDJSON;
 import static io.leitstand.event.webhook.service.WebhookSettings.HttpMethod.POST;
 import static io.leitstand.event.webhook.service.WebhookSettings.HttpMethod.PUT;
-import static java.lang.String.format;
-import static java.util.Base64.getEncoder;
-import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
-import static javax.ws.rs.core.Response.Status.OK;
+import static java.lang.System.currentTimeMillis;
+import static java.time.ZoneOffset.UTC;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static javax.ws.rs.core.Response.Status.Family.SUCCESSFUL;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentCaptor.forClass;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
-import javax.security.enterprise.credential.Password;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.Entity;
-import javax.ws.rs.client.Invocation.Builder;
-import javax.ws.rs.client.WebTarget;
-import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.Builder;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import javax.ws.rs.core.Response.StatusType;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import io.leitstand.event.webhook.service.Endpoint;
-import io.leitstand.security.auth.UserName;
 
 public class WebhookBatchProcessorTest {
 
@@ -53,7 +71,7 @@ public class WebhookBatchProcessorTest {
 	private WebhookEventLoop loop;
 	private WebhookBatchProcessor processor;
 	private Builder call;
-	private Client client;
+	private WebhookClient client;
 	
 	
 	@Before
@@ -61,104 +79,452 @@ public class WebhookBatchProcessorTest {
 		batch = mock(WebhookBatch.class);
 		invocation   = mock(WebhookInvocation.class);
 		loop	  = mock(WebhookEventLoop.class);
-		processor = new WebhookBatchProcessor(loop, batch);
+		client	  = mock(WebhookClient.class);
+		processor = new WebhookBatchProcessor(loop, client, batch);
 		call 	  = mock(Builder.class);
-		client	  = mock(Client.class);
 		when(invocation.getEndpoint()).thenReturn(Endpoint.valueOf("http://test.leitstand.io"));
-		WebTarget target = mock(WebTarget.class);
-		when(target.request()).thenReturn(call);
-		when(client.target(invocation.getEndpoint().toUri())).thenReturn(target);
 	}
 	
 	@Test
-	public void set_basic_authentication_when_user_password_credentials_exist() {
-		when(batch.getUserName()).thenReturn(new UserName("unittest"));
-		when(batch.getPassword()).thenReturn(new Password("password"));
+	public void set_authorization_header_when_credentials_exist() {
+		when(batch.getAuthorization()).thenReturn("Bearer ENCODED_ACCESS_KEY");
 		
 		processor.authenticate(call);
 		
-		verify(call).header("Authorization",format("Basic %s",getEncoder().encodeToString(toUtf8Bytes("unittest:password"))));
+		verify(call).header("Authorization", "Bearer ENCODED_ACCESS_KEY");
 	}
 	
 	@Test
-	public void set_bearer_token_when_access_key_exists() {
-		when(batch.getAccesskey()).thenReturn("ENCODED_ACCESS_KEY");
-		
+	public void omit_authorization_header_for_unauthenticated_request() {
 		processor.authenticate(call);
+		verifyZeroInteractions(call);
+	}
+	
+	@Test
+	public void record_successful_invocation() throws Exception {
+		when(invocation.getContentType()).thenReturn("application/json");
+		when(invocation.getMessage()).thenReturn("unittest");
+		when(batch.getMethod()).thenReturn(POST);
+		HttpResponse<String> success = mock(HttpResponse.class);
+		when(success.statusCode()).thenReturn(200);
+		when(client.send(any(HttpRequest.class))).thenReturn(success);
 		
-		verify(call).header("Authorization", format("Bearer ENCODED_ACCESS_KEY"));
+		
+		processor.call(invocation);
+		
+		WebhookInvocationResult result = processor.getResults().get(0);
+		assertSame(invocation,result.getInvocation());
+		assertEquals(PROCESSED,result.getMessageState());
+		assertEquals(Integer.valueOf(200),result.getHttpStatus());
 	}
 	
 	@Test
-	public void omit_authorization_header_for_unauthenticated_request() {
-		processor.authenticate(call);
-		verifyZeroInteractions(call);
+	public void record_failed_invocation() throws Exception {
+		when(invocation.getContentType()).thenReturn("application/json");
+		when(invocation.getMessage()).thenReturn("unittest");
+		when(batch.getMethod()).thenReturn(POST);
+		HttpResponse<String> failure = mock(HttpResponse.class);
+		when(failure.statusCode()).thenReturn(400);
+		when(client.send(any(HttpRequest.class))).thenReturn(failure);
+		
+		processor.call(invocation);
+		
+		WebhookInvocationResult result = processor.getResults().get(0);
+		assertSame(invocation,result.getInvocation());
+		assertEquals(FAILED,result.getMessageState());
+		assertEquals(Integer.valueOf(400),result.getHttpStatus());
 	}
 	
 	@Test
-	public void notify_loop_about_successful_invocation_invocation() {
+	public void reject_invocation_while_circuit_breaker_is_open() throws Exception {
+		when(loop.tryAcquireDispatchPermission(batch)).thenReturn(REJECTED);
+		
+		processor.call(invocation);
+		
+		WebhookInvocationResult result = processor.getResults().get(0);
+		assertSame(invocation,result.getInvocation());
+		assertEquals(READY,result.getMessageState());
+		assertNull(result.getHttpStatus());
+		verifyZeroInteractions(client);
+	}
+	
+	@Test
+	public void release_dispatch_permission_of_interrupted_invocation() throws Exception {
+		when(loop.tryAcquireDispatchPermission(batch)).thenReturn(7L);
 		when(invocation.getContentType()).thenReturn("application/json");
 		when(invocation.getMessage()).thenReturn("unittest");
 		when(batch.getMethod()).thenReturn(POST);
-		Response success = mock(Response.class);
-		when(success.getStatusInfo()).thenReturn(OK);
-		when(call.post(any(Entity.class))).thenReturn(success);
+		when(client.send(any(HttpRequest.class))).thenThrow(new InterruptedException());
 		
+		processor.call(invocation);
 		
-		processor.call(client,invocation);
+		assertTrue(Thread.interrupted());
+		assertTrue(processor.getResults().isEmpty());
+		verify(loop).releaseDispatchPermission(batch, 7L);
+	}
+	
+	@Test
+	public void keep_dispatch_permission_of_recorded_invocation() throws Exception {
+		when(invocation.getContentType()).thenReturn("application/json");
+		when(invocation.getMessage()).thenReturn("unittest");
+		when(batch.getMethod()).thenReturn(POST);
+		HttpResponse<String> success = mock(HttpResponse.class);
+		when(success.statusCode()).thenReturn(200);
+		when(client.send(any(HttpRequest.class))).thenReturn(success);
+		
+		processor.call(invocation);
 		
-		verify(loop).webhookSucceeded(eq(batch),
-								   	  eq(invocation),
-								   	  eq(OK), 
-								   	  anyLong());
+		verify(loop,never()).releaseDispatchPermission(eq(batch), anyLong());
 	}
 	
 	@Test
-	public void notify_loop_about_failed_invocation() {
+	public void do_not_release_dispatch_permission_of_rejected_invocation() throws Exception {
+		when(loop.tryAcquireDispatchPermission(batch)).thenReturn(REJECTED);
+		
+		processor.call(invocation);
+		
+		verify(loop,never()).releaseDispatchPermission(eq(batch), anyLong());
+	}
+	
+	@Test
+	public void report_invocation_result_with_granted_permit_to_circuit_breaker() throws Exception {
+		when(loop.tryAcquireDispatchPermission(batch)).thenReturn(7L);
 		when(invocation.getContentType()).thenReturn("application/json");
 		when(invocation.getMessage()).thenReturn("unittest");
 		when(batch.getMethod()).thenReturn(POST);
-		Response success = mock(Response.class);
-		when(success.getStatusInfo()).thenReturn(BAD_REQUEST);
-		when(call.post(any(Entity.class))).thenReturn(success);
+		HttpResponse<String> failure = mock(HttpResponse.class);
+		when(failure.statusCode()).thenReturn(500);
+		when(client.send(any(HttpRequest.class))).thenReturn(failure);
 		
-		processor.call(client,invocation);
-		verify(loop).webhookFailed(eq(batch),
-								   eq(invocation),
-								   eq(BAD_REQUEST), 
-								   anyLong());
+		processor.call(invocation);
+		
+		verify(loop).invocationCompleted(batch, 7L, processor.getResults().get(0));
 	}
 	
 	@Test
-	public void invoke_put() {
+	public void pause_webhook_and_defer_invocation_when_endpoint_is_overloaded() throws Exception {
+		when(invocation.getContentType()).thenReturn("application/json");
+		when(invocation.getMessage()).thenReturn("unittest");
+		when(batch.getMethod()).thenReturn(POST);
+		HttpResponse<String> overloaded = mock(HttpResponse.class);
+		when(overloaded.statusCode()).thenReturn(429);
+		when(overloaded.headers()).thenReturn(HttpHeaders.of(singletonMap("Retry-After", asList("120")), 
+															 (name,value) -> true));
+		when(client.send(any(HttpRequest.class))).thenReturn(overloaded);
+		
+		long before = currentTimeMillis();
+		boolean proceed = processor.call(invocation);
+		
+		assertFalse(proceed);
+		WebhookInvocationResult result = processor.getResults().get(0);
+		assertEquals(READY,result.getMessageState());
+		assertEquals(Integer.valueOf(429),result.getHttpStatus());
+		ArgumentCaptor<Long> until = forClass(Long.class);
+		verify(loop).pauseWebhook(eq(batch), until.capture());
+		assertTrue(until.getValue() >= before + 120000L);
+	}
+	
+	@Test
+	public void parse_retry_after_seconds() {
+		assertEquals(120000L, WebhookBatchProcessor.retryAfter(Optional.of("120"), currentTimeMillis()));
+	}
+	
+	@Test
+	public void parse_retry_after_date() {
+		long now = currentTimeMillis();
+		String date = RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(now).plusSeconds(60).atZone(UTC));
+		long retryAfter = WebhookBatchProcessor.retryAfter(Optional.of(date), now);
+		assertTrue(retryAfter > 59000L && retryAfter <= 60000L);
+	}
+	
+	@Test
+	public void apply_default_for_missing_or_malformed_retry_after() {
+		assertEquals(30000L, WebhookBatchProcessor.retryAfter(Optional.empty(), currentTimeMillis()));
+		assertEquals(30000L, WebhookBatchProcessor.retryAfter(Optional.of("soon"), currentTimeMillis()));
+	}
+	
+	@Test
+	public void limit_retry_after() {
+		assertEquals(3600000L, WebhookBatchProcessor.retryAfter(Optional.of("86400"), currentTimeMillis()));
+	}
+	
+	@Test
+	public void cancel_invocation_running_past_deadline() {
+		when(batch.getCallTimeout()).thenReturn(100);
+		Runnable cancel = mock(Runnable.class);
+		
+		processor.watch(0, cancel);
+		assertFalse(processor.cancelExpiredInvocation(99));
+		assertTrue(processor.cancelExpiredInvocation(100));
+		assertFalse(processor.cancelExpiredInvocation(200));
+		
+		verify(cancel).run();
+		assertTrue(processor.unwatch());
+	}
+	
+	@Test
+	public void do_not_cancel_completed_invocation() {
+		when(batch.getCallTimeout()).thenReturn(100);
+		Runnable cancel = mock(Runnable.class);
+		
+		processor.watch(0, cancel);
+		assertFalse(processor.unwatch());
+		assertFalse(processor.cancelExpiredInvocation(200));
+		
+		verifyZeroInteractions(cancel);
+	}
+	
+	@Test
+	public void record_invocation_cancelled_by_watchdog_as_failed() throws Exception {
+		when(invocation.getContentType()).thenReturn("application/json");
+		when(invocation.getMessage()).thenReturn("unittest");
+		when(batch.getMethod()).thenReturn(POST);
+		when(batch.getCallTimeout()).thenReturn(1);
+		when(client.send(any(HttpRequest.class))).thenAnswer(call -> {
+			processor.cancelExpiredInvocation(Long.MAX_VALUE);
+			throw new InterruptedException();
+		});
+		
+		processor.call(invocation);
+		
+		WebhookInvocationResult result = processor.getResults().get(0);
+		assertEquals(FAILED,result.getMessageState());
+		assertNull(result.getHttpStatus());
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+	
+	@Test
+	public void record_read_timeout_as_failed() throws Exception {
+		when(invocation.getContentType()).thenReturn("application/json");
+		when(invocation.getMessage()).thenReturn("unittest");
+		when(batch.getMethod()).thenReturn(POST);
+		when(batch.getReadTimeout()).thenReturn(1000);
+		when(client.send(any(HttpRequest.class))).thenThrow(new HttpTimeoutException("unittest"));
+		
+		processor.call(invocation);
+		
+		WebhookInvocationResult result = processor.getResults().get(0);
+		assertEquals(FAILED,result.getMessageState());
+		assertNull(result.getHttpStatus());
+	}
+	
+	@Test
+	public void apply_read_timeout_to_request() {
+		when(invocation.getContentType()).thenReturn("application/json");
+		when(batch.getReadTimeout()).thenReturn(1000);
+		
+		HttpRequest request = processor.newRequest(invocation).GET().build();
+		
+		assertEquals(Duration.ofMillis(1000),request.timeout().get());
+	}
+	
+	private static WebhookInvocation invocation(String endpoint, String message) {
+		WebhookInvocation invocation = mock(WebhookInvocation.class);
+		when(invocation.getEndpoint()).thenReturn(Endpoint.valueOf(endpoint));
+		when(invocation.getMessage()).thenReturn(message);
+		return invocation;
+	}
+	
+	@Test
+	public void encode_batch_as_json_array() {
+		when(batch.getDeliveryMode()).thenReturn(JSON_ARRAY);
+		
+		String body = processor.encode(asList(invocation("http://test.leitstand.io","{\"a\": 1}"),
+											  invocation("http://test.leitstand.io","{\"b\": 2}")));
+		
+		assertEquals("[{\"a\": 1},{\"b\": 2}]",body);
+	}
+	
+	@Test
+	public void encode_batch_as_ndjson() {
+		when(batch.getDeliveryMode()).thenReturn(NDJSON);
+		
+		String body = processor.encode(asList(invocation("http://test.leitstand.io","{\r\n\"a\": 1\n}"),
+											  invocation("http://test.leitstand.io","{\"b\": \"x\\ny\"}")));
+		
+		// Line breaks are removed, escaped line breaks in strings are retained.
+		assertEquals("{\"a\": 1}\n{\"b\": \"x\\ny\"}\n",body);
+	}
+	
+	@Test
+	public void group_batch_invocations_by_endpoint() {
+		List<List<WebhookInvocation>> groups = processor.groupByEndpoint(asList(invocation("http://a.leitstand.io","{}"),
+																				invocation("http://a.leitstand.io","{}"),
+																				invocation("http://b.leitstand.io","{}")));
+		assertEquals(2,groups.size());
+		assertEquals(2,groups.get(0).size());
+		assertEquals(1,groups.get(1).size());
+	}
+	
+	@Test
+	public void settle_all_messages_of_batch_with_response_status() throws Exception {
+		when(batch.isBatchDelivery()).thenReturn(true);
+		when(batch.getDeliveryMode()).thenReturn(JSON_ARRAY);
+		when(batch.getMethod()).thenReturn(POST);
+		when(batch.getWebhookInvocations()).thenReturn(asList(invocation("http://test.leitstand.io","{}"),
+															  invocation("http://test.leitstand.io","{}")));
+		HttpResponse<String> success = mock(HttpResponse.class);
+		when(success.statusCode()).thenReturn(200);
+		when(client.send(any(HttpRequest.class))).thenReturn(success);
+		
+		processor.run();
+		
+		verify(client).send(any(HttpRequest.class));
+		assertEquals(2,processor.getResults().size());
+		assertEquals(PROCESSED,processor.getResults().get(0).getMessageState());
+		assertEquals(PROCESSED,processor.getResults().get(1).getMessageState());
+	}
+	
+	@Test
+	public void settle_messages_of_batch_with_per_item_results() throws Exception {
+		when(batch.isBatchDelivery()).thenReturn(true);
+		when(batch.getDeliveryMode()).thenReturn(NDJSON);
+		when(batch.getMethod()).thenReturn(POST);
+		when(batch.getWebhookInvocations()).thenReturn(asList(invocation("http://test.leitstand.io","{}"),
+															  invocation("http://test.leitstand.io","{}")));
+		HttpResponse<String> multistatus = mock(HttpResponse.class);
+		when(multistatus.statusCode()).thenReturn(207);
+		when(multistatus.body()).thenReturn("[{\"status\":200},{\"status\":422}]");
+		when(client.send(any(HttpRequest.class))).thenReturn(multistatus);
+		
+		processor.run();
+		
+		assertEquals(PROCESSED,processor.getResults().get(0).getMessageState());
+		assertEquals(FAILED,processor.getResults().get(1).getMessageState());
+		assertEquals(Integer.valueOf(422),processor.getResults().get(1).getHttpStatus());
+		// Rejected items do not count as failed request.
+		ArgumentCaptor<WebhookInvocationResult> outcome = forClass(WebhookInvocationResult.class);
+		verify(loop).invocationCompleted(eq(batch), eq(0L), outcome.capture());
+		assertTrue(outcome.getValue().isSucceeded());
+	}
+	
+	@Test
+	public void report_single_outcome_per_batch_request() throws Exception {
+		when(batch.isBatchDelivery()).thenReturn(true);
+		when(batch.getDeliveryMode()).thenReturn(JSON_ARRAY);
+		when(batch.getMethod()).thenReturn(POST);
+		when(batch.getWebhookInvocations()).thenReturn(asList(invocation("http://test.leitstand.io","{}"),
+															  invocation("http://test.leitstand.io","{}"),
+															  invocation("http://test.leitstand.io","{}")));
+		HttpResponse<String> failure = mock(HttpResponse.class);
+		when(failure.statusCode()).thenReturn(500);
+		when(client.send(any(HttpRequest.class))).thenReturn(failure);
+		
+		processor.run();
+		
+		assertEquals(3,processor.getResults().size());
+		ArgumentCaptor<WebhookInvocationResult> outcome = forClass(WebhookInvocationResult.class);
+		verify(loop).invocationCompleted(eq(batch), eq(0L), outcome.capture());
+		assertEquals(FAILED,outcome.getValue().getMessageState());
+	}
+	
+	@Test
+	public void report_single_outcome_per_failed_batch_request() throws Exception {
+		when(batch.isBatchDelivery()).thenReturn(true);
+		when(batch.getDeliveryMode()).thenReturn(JSON_ARRAY);
+		when(batch.getMethod()).thenReturn(POST);
+		when(batch.getWebhookInvocations()).thenReturn(asList(invocation("http://test.leitstand.io","{}"),
+															  invocation("http://test.leitstand.io","{}")));
+		when(client.send(any(HttpRequest.class))).thenThrow(new IOException("unittest"));
+		
+		processor.run();
+		
+		assertEquals(2,processor.getResults().size());
+		assertEquals(FAILED,processor.getResults().get(0).getMessageState());
+		assertEquals(FAILED,processor.getResults().get(1).getMessageState());
+		verify(loop).invocationCompleted(batch, 0L, processor.getResults().get(0));
+	}
+	
+	@Test
+	public void ignore_malformed_per_item_results() {
+		assertNull(WebhookBatchProcessor.itemStatusOf("[{\"status\":200}]", 2));
+		assertNull(WebhookBatchProcessor.itemStatusOf("{\"status\":200}", 1));
+		assertNull(WebhookBatchProcessor.itemStatusOf("[{\"code\":200}]", 1));
+		assertNull(WebhookBatchProcessor.itemStatusOf("OK", 1));
+	}
+	
+	@Test
+	public void compress_request_entity() {
+		when(batch.getCompression()).thenReturn(GZIP);
+		when(batch.getMethod()).thenReturn(POST);
+		when(invocation.getMessage()).thenReturn("x".repeat(2048));
+		
+		HttpRequest request = processor.newHttpRequest(HttpRequest.newBuilder(invocation.getEndpoint().toUri()), 
+													   invocation);
+		
+		assertEquals("gzip",request.headers().firstValue("Content-Encoding").get());
+		assertTrue(request.bodyPublisher().get().contentLength() < 2048);
+	}
+	
+	@Test
+	public void do_not_compress_small_request_entity() {
+		when(batch.getCompression()).thenReturn(GZIP);
+		when(batch.getMethod()).thenReturn(POST);
+		when(invocation.getMessage()).thenReturn("unittest");
+		
+		HttpRequest request = processor.newHttpRequest(HttpRequest.newBuilder(invocation.getEndpoint().toUri()), 
+													   invocation);
+		
+		assertFalse(request.headers().firstValue("Content-Encoding").isPresent());
+		assertEquals(8L,request.bodyPublisher().get().contentLength());
+	}
+	
+	@Test
+	public void invoke_put() throws Exception {
 		when(invocation.getContentType()).thenReturn("text/plain");
 		when(invocation.getMessage()).thenReturn("unittest");
 		when(batch.getMethod()).thenReturn(PUT);
 
-		ArgumentCaptor<Entity> entityCaptor = forClass(Entity.class);
-		when(call.put(entityCaptor.capture())).thenReturn(null);
+		ArgumentCaptor<HttpRequest> requestCaptor = forClass(HttpRequest.class);
+		when(client.send(requestCaptor.capture())).thenReturn(null);
 		
-		processor.invokeWebhook(call,invocation);
+		processor.invokeWebhook(HttpRequest.newBuilder(invocation.getEndpoint().toUri())
+										   .header("Content-Type",invocation.getContentType()),
+								invocation);
 		
-		Entity entity = entityCaptor.getValue();
-		assertEquals("text/plain",entity.getMediaType().toString());
-		assertEquals("unittest",entity.getEntity());
+		HttpRequest request = requestCaptor.getValue();
+		assertEquals("PUT",request.method());
+		assertEquals("text/plain",request.headers().firstValue("Content-Type").get());
+		assertEquals(8L,request.bodyPublisher().get().contentLength());
 	}
 	
 	@Test
-	public void invoke_post() {
+	public void invoke_post() throws Exception {
 		when(invocation.getContentType()).thenReturn("application/json");
 		when(invocation.getMessage()).thenReturn("unittest");
 		when(batch.getMethod()).thenReturn(POST);
 
-		ArgumentCaptor<Entity> entityCaptor = forClass(Entity.class);
-		when(call.post(entityCaptor.capture())).thenReturn(null);
+		ArgumentCaptor<HttpRequest> requestCaptor = forClass(HttpRequest.class);
+		when(client.send(requestCaptor.capture())).thenReturn(null);
+		
+		processor.invokeWebhook(HttpRequest.newBuilder(invocation.getEndpoint().toUri())
+										   .header("Content-Type",invocation.getContentType()),
+								invocation);
 		
-		processor.invokeWebhook(call,invocation);
+		HttpRequest request = requestCaptor.getValue();
+		assertEquals("POST",request.method());
+		assertEquals("application/json",request.headers().firstValue("Content-Type").get());
+		assertEquals(8L,request.bodyPublisher().get().contentLength());
+	}
+	
+	@Test
+	public void notify_loop_about_completed_batch_with_failed_invocation() throws Exception {
+		when(batch.getWebhookInvocations()).thenReturn(asList(invocation));
+		when(client.send(any(HttpRequest.class))).thenThrow(new IOException("unittest"));
 		
-		Entity entity = entityCaptor.getValue();
-		assertEquals("application/json",entity.getMediaType().toString());
-		assertEquals("unittest",entity.getEntity());
+		processor.run();
+		
+		WebhookInvocationResult result = processor.getResults().get(0);
+		assertEquals(FAILED,result.getMessageState());
+		assertNull(result.getHttpStatus());
+		verify(loop).batchCompleted(batch, processor.getResults());
+	}
+	
+	@Test
+	public void map_unknown_status_code_to_status_family() {
+		StatusType status = WebhookBatchProcessor.statusOf(299);
+		assertEquals(299,status.getStatusCode());
+		assertEquals(SUCCESSFUL,status.getFamily());
 	}
 	
 }
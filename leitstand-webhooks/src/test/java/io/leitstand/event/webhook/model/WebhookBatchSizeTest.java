@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class WebhookBatchSizeTest {
+
+	private WebhookBatchSize size = new WebhookBatchSize(2, 10, 1, 1000, 0);
+	
+	@Test
+	public void start_with_lower_bound() {
+		assertEquals(2,size.get());
+	}
+	
+	@Test
+	public void increase_batch_size_after_full_batch() {
+		assertEquals(3,size.record(2, 2, 0, 200));
+		assertEquals(4,size.record(3, 3, 0, 300));
+	}
+	
+	@Test
+	public void keep_batch_size_after_partial_batch() {
+		size.record(2, 2, 0, 200);
+		assertEquals(3,size.record(1, 1, 0, 100));
+	}
+	
+	@Test
+	public void do_not_exceed_upper_bound() {
+		for(int i=0; i < 20; i++) {
+			size.record(size.get(), size.get(), 0, 0);
+		}
+		assertEquals(10,size.get());
+	}
+	
+	@Test
+	public void halve_batch_size_on_failed_invocation() {
+		size.configure(8, 10);
+		assertEquals(8,size.get());
+		size.configure(2, 10);
+		assertEquals(4,size.record(8, 8, 1, 0));
+	}
+	
+	@Test
+	public void halve_batch_size_when_latency_target_is_exceeded() {
+		size.configure(2, 10);
+		for(int i=0; i < 6; i++) {
+			size.record(size.get(), size.get(), 0, 0);
+		}
+		assertEquals(8,size.get());
+		assertEquals(4,size.record(8, 8, 0, 8001));
+	}
+	
+	@Test
+	public void do_not_fall_below_lower_bound() {
+		assertEquals(2,size.record(2, 2, 2, 0));
+	}
+	
+	@Test
+	public void ignore_batch_without_sent_invocations() {
+		assertEquals(2,size.record(2, 0, 0, 0));
+	}
+	
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.event.webhook.model.WebhookCircuitBreaker.REJECTED;
+import static io.leitstand.event.webhook.service.CircuitBreakerState.CLOSED;
+import static io.leitstand.event.webhook.service.CircuitBreakerState.HALF_OPEN;
+import static io.leitstand.event.webhook.service.CircuitBreakerState.OPEN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.leitstand.event.webhook.service.CircuitBreakerState;
+
+public class WebhookCircuitBreakerTest {
+
+	private WebhookCircuitBreaker breaker = new WebhookCircuitBreaker(4, 2, 50, 1000, 30000, 1);
+	
+	@Test
+	public void closed_breaker_admits_invocations() {
+		assertPermitted(breaker.tryAcquirePermission(0));
+		assertFalse(breaker.isOpen(0));
+		assertEquals(CLOSED,breaker.getState(0));
+	}
+	
+	@Test
+	public void do_not_evaluate_failure_rate_before_minimum_number_of_invocations() {
+		assertNull(invoke(false, 10, 0));
+		assertEquals(CLOSED,breaker.getState(0));
+	}
+	
+	@Test
+	public void open_breaker_when_failure_rate_is_exceeded() {
+		assertNull(invoke(true, 10, 0));
+		assertEquals(OPEN,invoke(false, 10, 0));
+		assertTrue(breaker.isOpen(0));
+		assertEquals(REJECTED,breaker.tryAcquirePermission(0));
+		assertEquals(1,breaker.getTrips());
+	}
+	
+	@Test
+	public void count_slow_invocations_as_bad_invocations() {
+		assertNull(invoke(true, 10, 0));
+		assertEquals(OPEN,invoke(true, 5000, 0));
+	}
+	
+	@Test
+	public void forget_invocations_outside_of_the_sliding_window() {
+		assertNull(invoke(true, 10, 0));
+		assertNull(invoke(true, 10, 0));
+		assertNull(invoke(true, 10, 0));
+		assertNull(invoke(false, 10, 0));
+		assertNull(invoke(true, 10, 0));
+		assertNull(invoke(true, 10, 0));
+		assertNull(invoke(true, 10, 0));
+		assertNull(invoke(true, 10, 0));
+		// The first failure is no longer in the sliding window.
+		assertNull(invoke(false, 10, 0));
+		assertEquals(CLOSED,breaker.getState(0));
+	}
+	
+	@Test
+	public void admit_single_probe_when_open_duration_has_elapsed() {
+		invoke(false, 10, 0);
+		invoke(false, 10, 0);
+		assertEquals(HALF_OPEN,breaker.getState(30000));
+		assertFalse(breaker.isOpen(30000));
+		assertPermitted(breaker.tryAcquirePermission(30000));
+		assertEquals(REJECTED,breaker.tryAcquirePermission(30000));
+	}
+	
+	@Test
+	public void reject_invocations_while_probes_are_in_flight() {
+		invoke(false, 10, 0);
+		invoke(false, 10, 0);
+		assertTrue(breaker.isRejecting(0));
+		assertFalse(breaker.isRejecting(30000));
+		breaker.tryAcquirePermission(30000);
+		assertTrue(breaker.isRejecting(30000));
+	}
+	
+	@Test
+	public void admit_next_probe_when_probe_permission_is_released() {
+		invoke(false, 10, 0);
+		invoke(false, 10, 0);
+		long probe = breaker.tryAcquirePermission(30000);
+		breaker.release(probe);
+		assertFalse(breaker.isRejecting(30000));
+		assertPermitted(breaker.tryAcquirePermission(30000));
+		assertEquals(HALF_OPEN,breaker.getState(30000));
+	}
+	
+	@Test
+	public void ignore_released_permission_of_closed_breaker() {
+		long permit = breaker.tryAcquirePermission(0);
+		breaker.release(permit);
+		assertFalse(breaker.isRejecting(0));
+		assertEquals(CLOSED,breaker.getState(0));
+	}
+	
+	@Test
+	public void close_breaker_when_probe_succeeds() {
+		invoke(false, 10, 0);
+		invoke(false, 10, 0);
+		long probe = breaker.tryAcquirePermission(30000);
+		assertEquals(CLOSED,breaker.record(probe, true, 10, 30000));
+		assertEquals(0,breaker.getTrips());
+		assertPermitted(breaker.tryAcquirePermission(30000));
+	}
+	
+	@Test
+	public void reopen_breaker_when_probe_fails() {
+		invoke(false, 10, 0);
+		invoke(false, 10, 0);
+		long probe = breaker.tryAcquirePermission(30000);
+		assertEquals(OPEN,breaker.record(probe, false, 10, 30000));
+		assertEquals(2,breaker.getTrips());
+		assertTrue(breaker.isOpen(30000));
+	}
+	
+	@Test
+	public void ignore_late_response_from_before_the_trip_while_probe_is_in_flight() {
+		long late = breaker.tryAcquirePermission(0);
+		invoke(false, 10, 0);
+		invoke(false, 10, 0);
+		long probe = breaker.tryAcquirePermission(30000);
+		
+		// Neither a late success closes nor a late failure re-opens the half-open breaker.
+		assertNull(breaker.record(late, true, 10, 30000));
+		assertNull(breaker.record(late, false, 10, 30000));
+		assertEquals(HALF_OPEN,breaker.getState(30000));
+		assertTrue(breaker.isRejecting(30000));
+		
+		assertEquals(CLOSED,breaker.record(probe, true, 10, 30000));
+	}
+	
+	@Test
+	public void ignore_late_response_from_before_the_trip_after_breaker_closed() {
+		long late = breaker.tryAcquirePermission(0);
+		invoke(false, 10, 0);
+		invoke(false, 10, 0);
+		long probe = breaker.tryAcquirePermission(30000);
+		breaker.record(probe, true, 10, 30000);
+		
+		assertNull(breaker.record(late, false, 10, 30000));
+		assertNull(invoke(true, 10, 30000));
+		assertEquals(CLOSED,breaker.getState(30000));
+	}
+	
+	@Test
+	public void do_not_release_probe_permission_with_permit_from_before_the_trip() {
+		long late = breaker.tryAcquirePermission(0);
+		invoke(false, 10, 0);
+		invoke(false, 10, 0);
+		breaker.tryAcquirePermission(30000);
+		
+		breaker.release(late);
+		assertTrue(breaker.isRejecting(30000));
+	}
+	
+	/**
+	 * Sends an invocation with a fresh permit and records its outcome.
+	 */
+	private CircuitBreakerState invoke(boolean succeeded, long execTime, long now) {
+		return breaker.record(breaker.tryAcquirePermission(now), succeeded, execTime, now);
+	}
+	
+	private static void assertPermitted(long permit) {
+		assertNotEquals(REJECTED,permit);
+	}
+	
+}
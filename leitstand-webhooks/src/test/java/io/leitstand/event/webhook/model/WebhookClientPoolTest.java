@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static java.net.URI.create;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.net.http.HttpClient;
+
+import org.junit.Test;
+
+public class WebhookClientPoolTest {
+
+	private static WebhookBatch batch(long webhookPK) {
+		WebhookBatch batch = mock(WebhookBatch.class);
+		when(batch.getWebhookPK()).thenReturn(webhookPK);
+		return batch;
+	}
+	
+	@Test
+	public void reuse_client_of_same_webhook() {
+		WebhookClientPool pool = new WebhookClientPool(null, 10, 60000);
+		assertSame(pool.getClient(batch(1)),pool.getClient(batch(1)));
+	}
+	
+	@Test
+	public void create_client_per_webhook() {
+		WebhookClientPool pool = new WebhookClientPool(null, 10, 60000);
+		assertNotSame(pool.getClient(batch(1)),pool.getClient(batch(2)));
+	}
+	
+	@Test
+	public void replace_client_when_connect_timeout_changes() {
+		WebhookClientPool pool = new WebhookClientPool(null, 10, 60000);
+		WebhookBatch batch = batch(1);
+		when(batch.getConnectTimeout()).thenReturn(1000);
+		WebhookClient client = pool.getClient(batch);
+		assertSame(client,pool.getClient(batch));
+		when(batch.getConnectTimeout()).thenReturn(2000);
+		assertNotSame(client,pool.getClient(batch));
+	}
+	
+	@Test
+	public void evict_idle_clients() throws InterruptedException {
+		WebhookClientPool pool = new WebhookClientPool(null, 10, 0);
+		WebhookClient client = pool.getClient(batch(1));
+		Thread.sleep(10);
+		assertNotSame(client,pool.getClient(batch(1)));
+	}
+	
+	@Test
+	public void close_evicted_idle_clients() throws Exception {
+		HttpClient http = mock(HttpClient.class, withSettings().extraInterfaces(AutoCloseable.class));
+		WebhookClientPool pool = new WebhookClientPool(null, 10, 0) {
+			@Override
+			HttpClient newHttpClient(int connectTimeout) {
+				return http;
+			}
+		};
+		pool.getClient(batch(1));
+		Thread.sleep(10);
+		pool.evictIdleClients();
+		verify((AutoCloseable)http).close();
+	}
+	
+	@Test
+	public void close_replaced_client_when_idle() throws Exception {
+		HttpClient http = mock(HttpClient.class, withSettings().extraInterfaces(AutoCloseable.class));
+		WebhookClientPool pool = new WebhookClientPool(null, 10, 50) {
+			@Override
+			HttpClient newHttpClient(int connectTimeout) {
+				return connectTimeout == 1000 ? http : mock(HttpClient.class);
+			}
+		};
+		WebhookBatch batch = batch(1);
+		when(batch.getConnectTimeout()).thenReturn(1000);
+		pool.getClient(batch);
+		when(batch.getConnectTimeout()).thenReturn(2000);
+		pool.getClient(batch);
+		// Batches in progress might still use the replaced client.
+		verify((AutoCloseable)http,never()).close();
+		Thread.sleep(100);
+		pool.evictIdleClients();
+		verify((AutoCloseable)http).close();
+	}
+	
+	@Test
+	public void share_request_permits_of_same_host() {
+		WebhookClientPool pool = new WebhookClientPool(null, 10, 60000);
+		assertSame(pool.getRequestPermits(create("http://test.leitstand.io/a")),
+				   pool.getRequestPermits(create("http://test.leitstand.io/b")));
+		assertNotSame(pool.getRequestPermits(create("http://test.leitstand.io/a")),
+				   	  pool.getRequestPermits(create("https://test.leitstand.io/a")));
+	}
+	
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.event.webhook.service.WebhookCompression.DEFLATE;
+import static io.leitstand.event.webhook.service.WebhookCompression.GZIP;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+
+public class WebhookCompressorTest {
+
+	private static final byte[] ENTITY = "{\"element_name\":\"leaf01\",\"element_role\":\"LEAF\"}".repeat(100).getBytes(UTF_8);
+	
+	private static byte[] read(InputStream in) throws IOException {
+		try(in){
+			return in.readAllBytes();
+		}
+	}
+	
+	@Test
+	public void compress_entity_with_gzip() throws IOException {
+		byte[] compressed = WebhookCompressor.compress(GZIP, ENTITY);
+		assertTrue(compressed.length < ENTITY.length);
+		assertArrayEquals(ENTITY, read(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+	}
+	
+	@Test
+	public void compress_entity_with_deflate() throws IOException {
+		byte[] compressed = WebhookCompressor.compress(DEFLATE, ENTITY);
+		assertTrue(compressed.length < ENTITY.length);
+		assertArrayEquals(ENTITY, read(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+	}
+	
+	@Test
+	public void reuse_pooled_compressor() throws IOException {
+		byte[] small = "{}".getBytes(UTF_8);
+		WebhookCompressor.compress(GZIP, ENTITY);
+		assertArrayEquals(small, read(new GZIPInputStream(new ByteArrayInputStream(WebhookCompressor.compress(GZIP, small)))));
+		assertArrayEquals(ENTITY, read(new GZIPInputStream(new ByteArrayInputStream(WebhookCompressor.compress(GZIP, ENTITY)))));
+	}
+	
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.event.webhook.model.WebhookConcurrencyLimits.defaultNodeLimit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WebhookConcurrencyLimitTest {
+
+	private WebhookConcurrencyLimit limit = new WebhookConcurrencyLimit(1, 50);
+	
+	private void saturate(long execTime, int samples) {
+		for(int i=0; i < samples; i++) {
+			limit.record(execTime, false, limit.get());
+		}
+	}
+	
+	@Test
+	public void start_with_lower_bound() {
+		assertEquals(1,limit.get());
+	}
+	
+	@Test
+	public void grow_limit_while_latency_is_stable() {
+		saturate(100, 200);
+		assertEquals(50,limit.get());
+	}
+	
+	@Test
+	public void do_not_grow_limit_when_limit_is_not_used() {
+		for(int i=0; i < 200; i++) {
+			limit.record(100, false, 0);
+		}
+		assertEquals(1,limit.get());
+	}
+	
+	@Test
+	public void shrink_limit_when_latency_increases() {
+		saturate(100, 200);
+		for(int i=0; i < 20; i++) {
+			limit.record(1000, false, 50);
+		}
+		assertTrue(limit.get() < 25);
+	}
+	
+	@Test
+	public void back_off_on_failed_invocation() {
+		saturate(100, 200);
+		assertEquals(45,limit.record(100, true, 50));
+	}
+	
+	@Test
+	public void do_not_fall_below_lower_bound() {
+		assertEquals(1,limit.record(100, true, 1));
+	}
+	
+	@Test
+	public void keep_fixed_default_of_node_limits_in_fixed_concurrency_mode() {
+		assertEquals("10",defaultNodeLimit(10));
+	}
+	
+}
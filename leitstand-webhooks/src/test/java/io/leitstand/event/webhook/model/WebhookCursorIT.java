@@ -0,0 +1,197 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.postgresql.ds.PGSimpleDataSource;
+
+import io.leitstand.commons.db.DatabaseService;
+
+/**
+ * Exercises the subscription cursors populating the webhook queues against a PostgreSQL database.
+ * <p>
+ * The test is skipped unless the <code>leitstand.webhook.it.postgres.url</code> system property
+ * points to a PostgreSQL database. The <code>leitstand.webhook.it.postgres.user</code> and
+ * <code>leitstand.webhook.it.postgres.password</code> system properties specify the database credentials.
+ * The test recreates the <code>bus</code> schema and must therefore not be run against a leitstand database.
+ */
+public class WebhookCursorIT {
+
+	private PGSimpleDataSource ds;
+	private WebhookInvocationService service;
+	private long topicId;
+
+	@Before
+	public void initSchema() throws SQLException {
+		String url = System.getProperty("leitstand.webhook.it.postgres.url");
+		assumeNotNull(url);
+		ds = new PGSimpleDataSource();
+		ds.setUrl(url);
+		ds.setUser(System.getProperty("leitstand.webhook.it.postgres.user"));
+		ds.setPassword(System.getProperty("leitstand.webhook.it.postgres.password"));
+
+		try (Connection c = ds.getConnection();
+			 Statement stmt = c.createStatement()){
+			stmt.execute("DROP SCHEMA IF EXISTS bus CASCADE");
+			stmt.execute("CREATE SCHEMA bus");
+			stmt.execute("CREATE TABLE bus.topic (id BIGSERIAL PRIMARY KEY, name VARCHAR(64))");
+			stmt.execute("CREATE TABLE bus.message (id BIGSERIAL PRIMARY KEY, "+
+													"topic_id INT8 NOT NULL REFERENCES bus.topic(id), "+
+													"name VARCHAR(128), "+
+													"txid INT8 NOT NULL DEFAULT txid_current())");
+			stmt.execute("CREATE TABLE bus.webhook (id BIGSERIAL PRIMARY KEY, "+
+												   "topic_id INT8 NOT NULL REFERENCES bus.topic(id), "+
+												   "selector VARCHAR(256))");
+			stmt.execute("CREATE TABLE bus.webhook_message (webhook_id INT8 NOT NULL REFERENCES bus.webhook(id), "+
+														   "message_id INT8 NOT NULL REFERENCES bus.message(id), "+
+														   "state VARCHAR(16), "+
+														   "PRIMARY KEY (webhook_id, message_id))");
+			stmt.execute("CREATE TABLE bus.webhook_cursor (webhook_id INT8 NOT NULL PRIMARY KEY REFERENCES bus.webhook(id) ON DELETE CASCADE, "+
+														  "txid INT8 NOT NULL)");
+			stmt.execute("INSERT INTO bus.topic (name) VALUES ('cursor-it')");
+			try (ResultSet rs = stmt.executeQuery("SELECT id FROM bus.topic")){
+				rs.next();
+				topicId = rs.getLong(1);
+			}
+		}
+		service = new WebhookInvocationService(null, null, null, new DatabaseService(ds));
+	}
+
+	@Test
+	public void start_cursor_of_new_webhook_after_existing_messages() throws SQLException {
+		long existing = sendMessage("event");
+		long webhook = addWebhook(null);
+
+		service.populateWebhookQueues();
+		assertTrue(hasCursor(webhook));
+		assertFalse(isQueued(webhook, existing));
+
+		long next = sendMessage("event");
+		service.populateWebhookQueues();
+		assertTrue(isQueued(webhook, next));
+	}
+
+	@Test
+	public void queue_selected_messages_only() throws SQLException {
+		long webhook = addWebhook("^match.*");
+		service.populateWebhookQueues();
+
+		long match = sendMessage("match-event");
+		long other = sendMessage("other-event");
+		service.populateWebhookQueues();
+
+		assertTrue(isQueued(webhook, match));
+		assertFalse(isQueued(webhook, other));
+	}
+
+	@Test
+	public void queue_message_of_transaction_committed_after_younger_transaction() throws SQLException {
+		long webhook = addWebhook(null);
+		service.populateWebhookQueues();
+
+		try (Connection older = ds.getConnection()){
+			older.setAutoCommit(false);
+			long delayed = sendMessage(older, "event");
+			long younger = sendMessage("event");
+
+			service.populateWebhookQueues();
+			assertTrue(isQueued(webhook, younger));
+			assertFalse(isQueued(webhook, delayed));
+
+			older.commit();
+			service.populateWebhookQueues();
+			assertTrue(isQueued(webhook, delayed));
+		}
+	}
+
+	@Test
+	public void do_not_queue_messages_twice() throws SQLException {
+		long webhook = addWebhook(null);
+		service.populateWebhookQueues();
+
+		sendMessage("event");
+		sendMessage("event");
+		service.populateWebhookQueues();
+		service.populateWebhookQueues();
+
+		assertEquals(2,queueSize(webhook));
+	}
+
+	private long addWebhook(String selector) throws SQLException {
+		try (Connection c = ds.getConnection();
+			 PreparedStatement stmt = c.prepareStatement("INSERT INTO bus.webhook (topic_id, selector) VALUES (?, ?) RETURNING id")){
+			stmt.setLong(1, topicId);
+			stmt.setString(2, selector);
+			return single(stmt);
+		}
+	}
+
+	private long sendMessage(String name) throws SQLException {
+		try (Connection c = ds.getConnection()){
+			return sendMessage(c, name);
+		}
+	}
+
+	private long sendMessage(Connection c, String name) throws SQLException {
+		try (PreparedStatement stmt = c.prepareStatement("INSERT INTO bus.message (topic_id, name) VALUES (?, ?) RETURNING id")){
+			stmt.setLong(1, topicId);
+			stmt.setString(2, name);
+			return single(stmt);
+		}
+	}
+
+	private boolean hasCursor(long webhook) throws SQLException {
+		return query("SELECT count(*) FROM bus.webhook_cursor WHERE webhook_id = ?", webhook) == 1;
+	}
+
+	private boolean isQueued(long webhook, long message) throws SQLException {
+		return query("SELECT count(*) FROM bus.webhook_message WHERE webhook_id = ? AND message_id = ?", webhook, message) == 1;
+	}
+
+	private long queueSize(long webhook) throws SQLException {
+		return query("SELECT count(*) FROM bus.webhook_message WHERE webhook_id = ?", webhook);
+	}
+
+	private long query(String sql, long... args) throws SQLException {
+		try (Connection c = ds.getConnection();
+			 PreparedStatement stmt = c.prepareStatement(sql)){
+			for(int i=0; i < args.length; i++) {
+				stmt.setLong(i+1, args[i]);
+			}
+			return single(stmt);
+		}
+	}
+
+	private static long single(PreparedStatement stmt) throws SQLException {
+		try (ResultSet rs = stmt.executeQuery()){
+			rs.next();
+			return rs.getLong(1);
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.jsonb.IsoDateAdapter.parseIsoDate;
+import static io.leitstand.commons.template.TemplateService.newTemplateService;
+import static io.leitstand.event.webhook.model.WebhookEnvelope.newWebhookEnvelope;
+import static io.leitstand.event.webhook.model.WebhookInvocation.newWebhookInvocation;
+import static io.leitstand.event.webhook.service.Endpoint.endpoint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import javax.json.JsonObject;
+
+import org.junit.Test;
+
+public class WebhookEnvelopeTest {
+
+	@Test
+	public void splice_payload_verbatim_into_envelope() {
+		Date dateCreated = new Date();
+		WebhookEnvelope envelope = newWebhookEnvelope()
+								   .withEventId("a74e555a-fca3-4a2b-a1d1-248695ddb93b")
+								   .withEventName("ElementImageUpgraded")
+								   .withCorrelationId("unittest")
+								   .withTopicName("element")
+								   .withDateCreated(dateCreated)
+								   .withPayload("{ \"element_name\" : \"l1.pod1\" }")
+								   .build();
+		
+		assertTrue(envelope.getEntity().endsWith("\"message\":{ \"element_name\" : \"l1.pod1\" }}"));
+		
+		JsonObject json = envelope.toJson();
+		assertEquals("a74e555a-fca3-4a2b-a1d1-248695ddb93b",json.getString("event_id"));
+		assertEquals("ElementImageUpgraded",json.getString("event_name"));
+		assertEquals("unittest",json.getString("correlation_id"));
+		assertEquals("element",json.getString("topic_name"));
+		assertEquals(parseIsoDate(json.getString("date_created")).getTime()/1000,dateCreated.getTime()/1000);
+		assertEquals("l1.pod1",json.getJsonObject("message").getString("element_name"));
+	}
+	
+	@Test
+	public void omit_missing_correlation_id() {
+		WebhookEnvelope envelope = newWebhookEnvelope()
+								   .withEventId("a74e555a-fca3-4a2b-a1d1-248695ddb93b")
+								   .withEventName("ElementImageUpgraded")
+								   .withTopicName("element")
+								   .withDateCreated(new Date())
+								   .withPayload("{}")
+								   .build();
+		
+		assertFalse(envelope.toJson().containsKey("correlation_id"));
+	}
+	
+	@Test
+	public void omit_missing_payload() {
+		WebhookEnvelope envelope = newWebhookEnvelope()
+								   .withEventId("a74e555a-fca3-4a2b-a1d1-248695ddb93b")
+								   .withEventName("ElementImageUpgraded")
+								   .withTopicName("element")
+								   .withDateCreated(new Date())
+								   .build();
+		
+		assertFalse(envelope.toJson().containsKey("message"));
+		assertEquals("element",envelope.toJson().getString("topic_name"));
+	}
+	
+	@Test
+	public void omit_empty_payload() {
+		WebhookEnvelope envelope = newWebhookEnvelope()
+								   .withEventId("a74e555a-fca3-4a2b-a1d1-248695ddb93b")
+								   .withEventName("ElementImageUpgraded")
+								   .withTopicName("element")
+								   .withDateCreated(new Date())
+								   .withPayload("")
+								   .build();
+		
+		assertFalse(envelope.toJson().containsKey("message"));
+		assertEquals("element",envelope.toJson().getString("topic_name"));
+	}
+	
+	@Test
+	public void omit_blank_payload() {
+		WebhookEnvelope envelope = newWebhookEnvelope()
+								   .withEventId("a74e555a-fca3-4a2b-a1d1-248695ddb93b")
+								   .withEventName("ElementImageUpgraded")
+								   .withTopicName("element")
+								   .withDateCreated(new Date())
+								   .withPayload(" \n ")
+								   .build();
+		
+		assertFalse(envelope.getEntity().contains("message"));
+		assertFalse(envelope.toJson().containsKey("message"));
+	}
+	
+	@Test
+	public void materialize_invocation_lazily() {
+		WebhookEnvelope envelope = newWebhookEnvelope()
+								   .withEventId("a74e555a-fca3-4a2b-a1d1-248695ddb93b")
+								   .withEventName("ElementImageUpgraded")
+								   .withTopicName("element")
+								   .withDateCreated(new Date())
+								   .withPayload("{\"element_name\":\"l1.pod1\"}")
+								   .build();
+		WebhookInvocation invocation = newWebhookInvocation()
+									   .withEnvelope(envelope)
+									   .withEndpointTemplate(new WebhookRewritingService(newTemplateService())
+											   				 .compileEndpoint(endpoint("http://test.leitstand.io/{{message.element_name}}")))
+									   .build();
+		
+		assertEquals(endpoint("http://test.leitstand.io/l1.pod1"),invocation.getEndpoint());
+		assertEquals(envelope.getEntity(),invocation.getMessage());
+	}
+	
+}
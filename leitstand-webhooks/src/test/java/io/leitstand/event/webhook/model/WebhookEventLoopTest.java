@@ -15,22 +15,39 @@
  */
 package io.leitstand.event.webhook.model;
 
+import static io.leitstand.event.webhook.model.WebhookCircuitBreaker.REJECTED;
+import static io.leitstand.event.webhook.model.WebhookInvocationResult.invocationDeferred;
+import static io.leitstand.event.webhook.model.WebhookInvocationResult.invocationRejected;
+import static io.leitstand.event.webhook.model.WebhookInvocationResult.invocationSucceeded;
+import static java.lang.System.currentTimeMillis;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static javax.ws.rs.core.Response.Status.OK;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.ArgumentCaptor.forClass;
-import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
 
 import javax.enterprise.concurrent.ManagedExecutorService;
 
@@ -45,7 +62,6 @@ import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
-import org.mockito.stubbing.Stubber;
 
 import io.leitstand.commons.messages.Messages;
 
@@ -66,6 +82,21 @@ public class WebhookEventLoopTest {
 	@Mock
 	private WebhookInvocationService service;
 	
+	@Mock
+	private WebhookClientPool clients;
+	
+	@Mock
+	private WebhookCircuitBreakers breakers;
+	
+	@Mock
+	private WebhookRateLimiters limiters;
+	
+	@Mock
+	private WebhookBatchSizes batchSizes;
+	
+	@Mock
+	private WebhookConcurrencyLimits concurrency;
+	
 	@Mock
 	private Messages messages;
 	
@@ -92,6 +123,7 @@ public class WebhookEventLoopTest {
 	public void start_event_loop_when_stopped() {
 		loop.startEventLoop();
 		verify(wm).execute(loop);
+		verify(wm,times(3)).execute(any(Runnable.class));
 		assertTrue(loop.isEnabled());
 		verifyZeroInteractions(wm,service,permits,messages);
 	}
@@ -114,7 +146,7 @@ public class WebhookEventLoopTest {
 	public void wait_for_executable_batches() {
 		List<WebhookBatch> batches = asList(mock(WebhookBatch.class));
 		
-		when(service.findInvocations()).thenReturn(emptyList())
+		when(service.findInvocations(any(Predicate.class))).thenReturn(emptyList())
 										.thenReturn(batches);
 		
 		
@@ -122,27 +154,292 @@ public class WebhookEventLoopTest {
 		
 	}
 	
+	@Test
+	public void wake_up_waiting_event_loop() {
+		List<WebhookBatch> batches = asList(mock(WebhookBatch.class));
+		
+		when(service.findInvocations(any(Predicate.class))).thenAnswer(new Answer<List<WebhookBatch>>() {
+											@Override
+											public List<WebhookBatch> answer(InvocationOnMock invocation) throws Throwable {
+												loop.wakeup();
+												return emptyList();
+											}
+										})
+										.thenReturn(batches);
+		
+		long start = currentTimeMillis();
+		assertSame(batches,loop.batches());
+		assertTrue(currentTimeMillis() - start < 1000);
+		verify(service,times(2)).populateWebhookQueues();
+	}
+	
+	@Test
+	public void stop_waiting_for_batches_when_claimer_is_interrupted() {
+		when(service.findInvocations(any(Predicate.class))).thenReturn(emptyList());
+		
+		Thread.currentThread().interrupt();
+		long start = currentTimeMillis();
+		assertTrue(loop.batches().isEmpty());
+		assertTrue(currentTimeMillis() - start < 1000);
+		// No further polls after the interrupt and the interrupt status is retained.
+		verify(service).findInvocations(any(Predicate.class));
+		assertTrue(Thread.interrupted());
+	}
+	
+	@Test
+	public void stop_claiming_batches_when_claimer_is_interrupted() {
+		when(service.findInvocations(any(Predicate.class))).thenAnswer(new Answer<List<WebhookBatch>>() {
+											@Override
+											public List<WebhookBatch> answer(InvocationOnMock invocation) throws Throwable {
+												Thread.currentThread().interrupt();
+												return emptyList();
+											}
+										});
+		loop.startEventLoop();
+		
+		loop.run();
+		
+		assertTrue(loop.isEnabled());
+		verify(service).findInvocations(any(Predicate.class));
+		assertTrue(Thread.interrupted());
+	}
+	
 	@Test
 	public void process_batches() throws InterruptedException {
 		WebhookBatch batch = mock(WebhookBatch.class);
-		when(service.findInvocations()).thenReturn(asList(batch));
+		claimAndStop(batch);
 		ArgumentCaptor<WebhookBatchProcessor> processorCaptor = ArgumentCaptor.forClass(WebhookBatchProcessor.class);
-		// This test requires a little trick to cancel the event loop after processing the first batch.
 		loop.startEventLoop();
-		stopEventLoop().when(wm).execute(processorCaptor.capture());
+		doNothing().when(wm).execute(processorCaptor.capture());
 		loop.run();
 		verify(service).populateWebhookQueues();
-		verify(permits).acquire();
+		// Claimer does not wait for batch execution credits.
+		verifyZeroInteractions(permits);
+		
+		loop.dispatchBatches();
+		verify(permits).acquireUninterruptibly();
+		assertSame(batch,processorCaptor.getValue().getBatch());
+	}
+	
+	@Test
+	public void claim_next_batch_of_webhook_while_batch_is_in_flight() {
+		WebhookBatch first = mock(WebhookBatch.class);
+		when(first.getWebhookPK()).thenReturn(1L);
+		WebhookBatch second = mock(WebhookBatch.class);
+		when(second.getWebhookPK()).thenReturn(1L);
+		when(service.findInvocations(any(Predicate.class))).thenReturn(asList(first))
+														   .thenAnswer(new Answer<List<WebhookBatch>>() {
+															   @Override
+															   public List<WebhookBatch> answer(InvocationOnMock invocation) throws Throwable {
+																   loop.stopEventLoop();
+																   return asList(second);
+															   }
+														   });
+		loop.startEventLoop();
+		loop.run();
+		verify(service,times(2)).populateWebhookQueues();
+		// One batch in flight and one prefetched batch.
+		assertFalse(loop.hasCredit(1L));
+		
+		loop.dispatchBatches();
+		// The prefetched batch is deferred until the in-flight batch has been processed.
+		verify(permits,times(1)).acquireUninterruptibly();
+		verify(wm,times(4)).execute(any(Runnable.class));
+	}
+	
+	@Test
+	public void prefetch_one_batch_beyond_concurrency_limit() {
+		WebhookBatch batch = mock(WebhookBatch.class);
+		when(batch.getWebhookPK()).thenReturn(1L);
+		claimAndStop(batch);
+		loop.startEventLoop();
+		loop.run();
+		loop.dispatchBatches();
+		assertTrue(loop.hasCredit(1L));
+	}
+
+	@Test
+	public void dispatch_claimed_batches_when_dispatcher_is_interrupted() {
+		WebhookBatch batch = mock(WebhookBatch.class);
+		claimAndStop(batch);
+		loop.startEventLoop();
+		loop.run();
+		Thread.currentThread().interrupt();
+		loop.dispatchBatches();
+		// Interrupt status is restored when the dispatcher terminates.
+		assertTrue(Thread.interrupted());
+		assertSame(batch,processorCaptor.getValue().getBatch());
+	}
+	
+	@Test
+	public void process_batches_asynchronously_in_async_dispatch_mode() throws InterruptedException {
+		WebhookBatch batch = mock(WebhookBatch.class);
+		claimAndStop(batch);
+		ArgumentCaptor<WebhookBatchProcessor> processorCaptor = ArgumentCaptor.forClass(WebhookBatchProcessor.class);
+		loop.setAsyncDispatch(true);
+		loop.startEventLoop();
+		doNothing().when(wm).execute(processorCaptor.capture());
+		loop.run();
+		loop.dispatchBatches();
+		assertTrue(processorCaptor.getValue() instanceof AsyncWebhookBatchProcessor);
 		assertSame(batch,processorCaptor.getValue().getBatch());
+	}
+
+	@Test
+	public void limit_batches_in_flight_to_threads_of_managed_executor_service() {
+		assertEquals(10,loop.credits());
+	}
+	
+	@Test
+	public void do_not_limit_batches_in_flight_to_threads_in_async_dispatch_mode() {
+		loop.setAsyncDispatch(true);
+		assertEquals(10000,loop.credits());
+	}
+	
+	@Test
+	public void do_not_limit_batches_in_flight_to_threads_when_using_virtual_threads() {
+		loop.setVirtualThreads(mock(ExecutorService.class));
+		assertEquals(10000,loop.credits());
+	}
+	
+	@Test
+	public void fall_back_to_managed_executor_service_when_virtual_threads_are_not_supported() {
+		// Factory method does not exist prior to JDK 21.
+		assertNull(WebhookEventLoop.newVirtualThreadPerTaskExecutor(Object.class));
+	}
+	
+	@Test
+	public void create_virtual_thread_executor_when_virtual_threads_are_supported() {
+		assumeTrue(Runtime.version().feature() >= 21);
+		ExecutorService executor = WebhookEventLoop.newVirtualThreadPerTaskExecutor(Executors.class);
+		assertNotNull(executor);
+		executor.shutdown();
+	}
+	
+	@Test
+	public void shutdown_virtual_thread_executor_when_leitstand_is_stopped() {
+		ExecutorService executor = mock(ExecutorService.class);
+		loop.setVirtualThreads(executor);
+		loop.onShutdown();
+		assertFalse(loop.isEnabled());
+		verify(executor).shutdown();
+	}
+	
+	@Test
+	public void return_credits_when_batch_completed() {
+		WebhookBatch batch = mock(WebhookBatch.class);
+		when(batch.getWebhookPK()).thenReturn(1L);
+		WebhookBatch prefetched = mock(WebhookBatch.class);
+		when(prefetched.getWebhookPK()).thenReturn(1L);
+		claimAndStop(batch, prefetched);
+		loop.startEventLoop();
+		loop.run();
+		loop.dispatchBatches();
+		assertFalse(loop.hasCredit(1L));
+		
+		List<WebhookInvocationResult> results = emptyList();
+		loop.batchCompleted(batch, results);
+		assertTrue(loop.hasCredit(1L));
+		verify(service).invocationsCompleted(batch, results);
+		verify(batchSizes).record(batch, results);
+		// The credit is passed on to the deferred batch of the same webhook.
+		verify(permits,never()).release();
+		assertSame(prefetched,processorCaptor.getValue().getBatch());
+		
+		loop.batchCompleted(prefetched, results);
+		verify(permits).release();
+	}
+	
+	@Test
+	public void return_rate_limit_tokens_of_unsent_invocations() {
+		WebhookInvocation succeeded = mock(WebhookInvocation.class);
+		WebhookInvocation deferred = mock(WebhookInvocation.class);
+		WebhookInvocation rejected = mock(WebhookInvocation.class);
+		WebhookInvocation cancelled = mock(WebhookInvocation.class);
+		WebhookBatch batch = mock(WebhookBatch.class);
+		when(batch.getWebhookPK()).thenReturn(1L);
+		when(batch.getWebhookInvocations()).thenReturn(asList(succeeded, deferred, rejected, cancelled));
+		
+		loop.batchCompleted(batch, asList(invocationSucceeded(succeeded, OK, 0),
+										  invocationDeferred(deferred, SERVICE_UNAVAILABLE, 0),
+										  invocationRejected(rejected)));
 		
+		// The rejected and the cancelled invocation have not been sent.
+		verify(limiters).release(batch, 2);
+	}
+	
+	@Test
+	public void return_credits_when_batch_cannot_be_scheduled() {
+		WebhookBatch batch = mock(WebhookBatch.class);
+		when(batch.getWebhookPK()).thenReturn(1L);
+		claimAndStop(batch);
+		loop.startEventLoop();
+		doThrow(new IllegalStateException("unittest")).when(wm).execute(processorCaptor.capture());
+		loop.run();
+		loop.dispatchBatches();
+		assertTrue(loop.hasCredit(1L));
+		verify(permits).release();
+	}
+
+	@Test
+	public void do_not_claim_batches_for_webhook_with_rejecting_circuit_breaker() {
+		when(breakers.isRejecting(1L)).thenReturn(true);
+		assertFalse(loop.hasCredit(1L));
+		assertTrue(loop.hasCredit(2L));
+	}
+	
+	@Test
+	public void do_not_claim_batches_for_paused_webhook() {
+		WebhookBatch batch = mock(WebhookBatch.class);
+		when(batch.getWebhookPK()).thenReturn(1L);
+		loop.pauseWebhook(batch, currentTimeMillis() + 60000L);
+		assertFalse(loop.hasCredit(1L));
+		assertTrue(loop.hasCredit(2L));
+		assertEquals(REJECTED,loop.tryAcquireDispatchPermission(batch));
+	}
+	
+	@Test
+	public void resume_paused_webhook_when_pause_has_elapsed() {
+		WebhookBatch batch = mock(WebhookBatch.class);
+		when(batch.getWebhookPK()).thenReturn(1L);
+		when(breakers.tryAcquirePermission(batch)).thenReturn(7L);
+		loop.pauseWebhook(batch, currentTimeMillis() - 1L);
+		assertTrue(loop.hasCredit(1L));
+		assertEquals(7L,loop.tryAcquireDispatchPermission(batch));
+	}
+	
+	@Test
+	public void release_expired_leases_once_per_reaper_interval() {
+		when(service.releaseExpiredLeases()).thenReturn(0);
+		loop.releaseExpiredLeases();
+		loop.releaseExpiredLeases();
+		verify(service).releaseExpiredLeases();
+	}
+	
+	@Test
+	public void release_expired_leases_with_every_poll_while_expired_leases_exist() {
+		when(service.releaseExpiredLeases()).thenReturn(10).thenReturn(0);
+		loop.releaseExpiredLeases();
+		loop.releaseExpiredLeases();
+		loop.releaseExpiredLeases();
+		verify(service,times(2)).releaseExpiredLeases();
+	}
+	
+	@Test
+	public void keep_polling_when_expired_leases_cannot_be_released() {
+		List<WebhookBatch> batches = asList(mock(WebhookBatch.class));
+		when(service.releaseExpiredLeases()).thenThrow(new IllegalStateException("unittest"));
+		when(service.findInvocations(any(Predicate.class))).thenReturn(batches);
+		assertSame(batches,loop.batches());
 	}
 
-	private Stubber stopEventLoop() {
-		return doAnswer(new Answer<>() {
+	private void claimAndStop(WebhookBatch... batches) {
+		// Stop the event loop after claiming the first batches.
+		when(service.findInvocations(any(Predicate.class))).thenAnswer(new Answer<List<WebhookBatch>>() {
 			@Override
-			public Object answer(InvocationOnMock invocation) throws Throwable {
+			public List<WebhookBatch> answer(InvocationOnMock invocation) throws Throwable {
 				loop.stopEventLoop();
-				return null;
+				return asList(batches);
 			}
 		});
 	}
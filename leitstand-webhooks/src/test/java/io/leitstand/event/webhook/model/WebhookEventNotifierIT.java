@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.event.queue.service.MessageSent.newMessageSent;
+import static io.leitstand.event.queue.service.TopicName.topicName;
+import static io.leitstand.event.webhook.model.WebhookEventNotifier.CHANNEL;
+import static org.junit.Assume.assumeNotNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import javax.enterprise.concurrent.ManagedExecutorService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.postgresql.ds.PGSimpleDataSource;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.event.queue.service.MessageSent;
+
+/**
+ * Exercises <code>LISTEN</code> and <code>NOTIFY</code> against a PostgreSQL database.
+ * <p>
+ * The test is skipped unless the <code>leitstand.webhook.it.postgres.url</code> system property
+ * points to a PostgreSQL database. The <code>leitstand.webhook.it.postgres.user</code> and
+ * <code>leitstand.webhook.it.postgres.password</code> system properties specify the database credentials.
+ */
+public class WebhookEventNotifierIT {
+
+	private static final long WAIT_MILLIS = 5000;
+
+	private PGSimpleDataSource ds;
+	private WebhookEventLoop loop;
+	private WebhookEventNotifier notifier;
+	private MessageSent event;
+
+	@Before
+	public void startNotifier() {
+		String url = System.getProperty("leitstand.webhook.it.postgres.url");
+		assumeNotNull(url);
+		ds = new PGSimpleDataSource();
+		ds.setUrl(url);
+		ds.setUser(System.getProperty("leitstand.webhook.it.postgres.user"));
+		ds.setPassword(System.getProperty("leitstand.webhook.it.postgres.password"));
+
+		loop = mock(WebhookEventLoop.class);
+		ManagedExecutorService wm = mock(ManagedExecutorService.class);
+		doAnswer(invocation -> {
+			new Thread((Runnable) invocation.getArguments()[0]).start();
+			return null;
+		}).when(wm).execute(any(Runnable.class));
+
+		notifier = new WebhookEventNotifier(ds,
+											new DatabaseService(ds),
+											loop,
+											wm,
+											true);
+		event = newMessageSent()
+				.withTopicName(topicName("notifier-it"))
+				.build();
+		notifier.onStartup();
+		// Wake up after LISTEN was issued.
+		verify(loop,timeout(WAIT_MILLIS)).wakeup();
+	}
+
+	@After
+	public void stopNotifier() {
+		if(notifier != null) {
+			notifier.onShutdown();
+		}
+	}
+
+	@Test
+	public void wake_up_event_loop_when_message_sent_is_committed() {
+		notifier.onMessageSent(event);
+		verify(loop,timeout(WAIT_MILLIS).times(2)).wakeup();
+	}
+
+	@Test
+	public void discard_notification_when_transaction_is_rolled_back() throws SQLException, InterruptedException {
+		try (Connection c = ds.getConnection()){
+			c.setAutoCommit(false);
+			try (PreparedStatement stmt = c.prepareStatement("SELECT pg_notify(?, ?)")){
+				stmt.setString(1, CHANNEL);
+				stmt.setString(2, "notifier-it");
+				stmt.executeQuery();
+			}
+			c.rollback();
+		}
+		Thread.sleep(WAIT_MILLIS);
+		verify(loop,times(1)).wakeup();
+	}
+
+}
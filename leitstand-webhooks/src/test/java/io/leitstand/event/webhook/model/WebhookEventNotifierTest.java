@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.event.queue.service.MessageSent.newMessageSent;
+import static io.leitstand.event.queue.service.TopicName.topicName;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.commons.db.ResultSetMapping;
+import io.leitstand.commons.db.StatementPreparator;
+import io.leitstand.event.queue.service.MessageSent;
+
+public class WebhookEventNotifierTest {
+
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	private DataSource ds;
+	private DatabaseService db;
+	private WebhookEventLoop loop;
+	private ManagedExecutorService wm;
+	private Connection connection;
+	private PGConnection pg;
+	private MessageSent event;
+	
+	@Before
+	public void initTestEnvironment() throws SQLException {
+		ds = mock(DataSource.class);
+		db = mock(DatabaseService.class);
+		loop = mock(WebhookEventLoop.class);
+		wm = mock(ManagedExecutorService.class);
+		connection = mock(Connection.class);
+		pg = mock(PGConnection.class);
+		when(connection.createStatement()).thenReturn(mock(Statement.class));
+		when(connection.unwrap(PGConnection.class)).thenReturn(pg);
+		event = newMessageSent()
+				.withTopicName(topicName("unittest"))
+				.build();
+	}
+	
+	@Test
+	public void do_not_notify_listeners_when_notifier_is_disabled() {
+		WebhookEventNotifier notifier = new WebhookEventNotifier(ds, db, loop, wm, false);
+		notifier.onStartup();
+		notifier.onMessageSent(event);
+		verifyZeroInteractions(ds,db,wm);
+	}
+	
+	@Test
+	public void notify_listeners_about_sent_message() {
+		WebhookEventNotifier notifier = new WebhookEventNotifier(ds, db, loop, wm, true);
+		notifier.onMessageSent(event);
+		verify(db).executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class));
+	}
+	
+	@Test
+	public void do_not_propagate_failed_notification() {
+		when(db.executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class))).thenThrow(new IllegalStateException("unittest"));
+		WebhookEventNotifier notifier = new WebhookEventNotifier(ds, db, loop, wm, true);
+		notifier.onMessageSent(event);
+		verify(db).executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class));
+	}
+	
+	@Test
+	public void start_listener_on_startup() {
+		WebhookEventNotifier notifier = new WebhookEventNotifier(ds, db, loop, wm, true);
+		notifier.onStartup();
+		notifier.onStartup();
+		verify(wm).execute(notifier);
+	}
+	
+	@Test
+	public void wake_up_event_loop_when_notification_arrives() throws SQLException {
+		WebhookEventNotifier notifier = new WebhookEventNotifier(ds, db, loop, wm, true);
+		notifier.onStartup();
+		when(pg.getNotifications(anyInt())).thenReturn(null)
+										   .thenAnswer(new Answer<PGNotification[]>() {
+											   @Override
+											   public PGNotification[] answer(InvocationOnMock invocation) throws Throwable {
+												   notifier.onShutdown();
+												   return new PGNotification[] {mock(PGNotification.class)};
+											   }
+										   });
+		
+		notifier.listen(connection);
+		
+		// Wake up after LISTEN was issued and after the notification was received.
+		verify(loop,times(2)).wakeup();
+	}
+	
+	@Test
+	public void propagate_connection_loss() throws SQLException {
+		exception.expect(SQLException.class);
+		WebhookEventNotifier notifier = new WebhookEventNotifier(ds, db, loop, wm, true);
+		notifier.onStartup();
+		when(pg.getNotifications(anyInt())).thenThrow(new SQLException("Connection lost"));
+		
+		notifier.listen(connection);
+	}
+	
+}
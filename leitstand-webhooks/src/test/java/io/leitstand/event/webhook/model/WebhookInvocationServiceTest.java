@@ -26,6 +26,8 @@ import static io.leitstand.event.queue.service.DomainEventId.randomDomainEventId
 import static io.leitstand.event.queue.service.DomainEventName.domainEventName;
 import static io.leitstand.event.queue.service.TopicName.topicName;
 import static io.leitstand.event.webhook.model.WebhookInvocation.newWebhookInvocation;
+import static io.leitstand.event.webhook.model.WebhookInvocationResult.invocationFailed;
+import static io.leitstand.event.webhook.model.WebhookInvocationResult.invocationSucceeded;
 import static io.leitstand.event.webhook.service.Endpoint.endpoint;
 import static io.leitstand.event.webhook.service.WebhookId.randomWebhookId;
 import static io.leitstand.event.webhook.service.WebhookName.webhookName;
@@ -36,14 +38,23 @@ import static java.util.Arrays.asList;
 import static java.util.Base64.getEncoder;
 import static java.util.Collections.emptyList;
 import static javax.json.Json.createObjectBuilder;
+import static javax.ws.rs.core.Response.Status.OK;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.AbstractMap.SimpleEntry;
 import java.util.List;
 
 import javax.json.JsonObject;
@@ -92,6 +103,8 @@ public class WebhookInvocationServiceTest {
 		when(webhook.getWebhookId()).thenReturn(randomWebhookId());
 		when(webhook.getWebhookName()).thenReturn(webhookName("unittest"));
 		when(webhook.getEndpoint()).thenReturn(WEBHOOK_ENDPOINT);
+		when(webhook.getId()).thenReturn(1L);
+		when(webhook.getBatchSize()).thenReturn(10);
 		event   = newDomainEvent(JsonObject.class)
 				  .withDomainEventId(randomDomainEventId())
 				  .withTopicName(topic.getName())
@@ -106,10 +119,13 @@ public class WebhookInvocationServiceTest {
 			   .withMessage(marshal(event).toString())
 			   .build();
 		db = mock(DatabaseService.class);
-		service = new WebhookInvocationService(repository, 
-											   db,
-											   secret, 
-											   new WebhookRewritingService(newTemplateService()) );
+		service = new WebhookInvocationService(new WebhookRegistry(repository, 
+																   secret, 
+																   new WebhookRewritingService(newTemplateService()), 
+																   60000), 
+											   new WebhookRateLimiters(),
+											   new WebhookBatchSizes(),
+											   db);
 	}
 	
 	@Test
@@ -128,7 +144,7 @@ public class WebhookInvocationServiceTest {
 	@Test
 	public void invoke_webhook_without_authentication() {
 		when(repository.execute(any(Query.class))).thenReturn(asList(webhook));
-		when(db.executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class))).thenReturn(asList(call));
+		when(db.executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class))).thenReturn(asList(new SimpleEntry<>(1L,call)));
 		
 		List<WebhookBatch> batches = service.findInvocations();
 		assertFalse(batches.isEmpty());
@@ -147,7 +163,7 @@ public class WebhookInvocationServiceTest {
 	@Test
 	public void invoke_webhook_with_basic_authentication() {
 		when(repository.execute(any(Query.class))).thenReturn(asList(webhook));
-		when(db.executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class))).thenReturn(asList(call));
+		when(db.executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class))).thenReturn(asList(new SimpleEntry<>(1L,call)));
 		
 		when(webhook.isBasicAuthentication()).thenReturn(TRUE);
 		when(webhook.getUser()).thenReturn("unittest");
@@ -171,7 +187,7 @@ public class WebhookInvocationServiceTest {
 	@Test
 	public void invoke_webhook_with_bearer_token_authentication() {
 		when(repository.execute(any(Query.class))).thenReturn(asList(webhook));
-		when(db.executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class))).thenReturn(asList(call));
+		when(db.executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class))).thenReturn(asList(new SimpleEntry<>(1L,call)));
 		when(webhook.getAccessKey64()).thenReturn(SECRET64);
 		when(secret.decrypt(SECRET)).thenReturn(SECRET);
 		
@@ -195,4 +211,83 @@ public class WebhookInvocationServiceTest {
 		assertEquals("{\"unit\":\"test\"}",payload.getJsonObject("payload").toString());
 	}
 	
+	@Test
+	public void share_envelope_of_a_message_claimed_by_multiple_webhooks() throws SQLException {
+		Webhook other = mock(Webhook.class);
+		when(other.getHttpMethod()).thenReturn(POST);
+		when(other.getWebhookId()).thenReturn(randomWebhookId());
+		when(other.getWebhookName()).thenReturn(webhookName("other"));
+		when(other.getEndpoint()).thenReturn(WEBHOOK_ENDPOINT);
+		when(other.getId()).thenReturn(2L);
+		when(other.getBatchSize()).thenReturn(10);
+		when(other.getTopicName()).thenReturn(topic.getName());
+		when(webhook.getTopicName()).thenReturn(topic.getName());
+		when(repository.execute(any(Query.class))).thenReturn(asList(webhook,other));
+		
+		// The payload is only transferred with the first row of a message.
+		ResultSet first = claimedMessage(1L, "{\"unit\":\"test\"}");
+		ResultSet second = claimedMessage(2L, null);
+		when(db.executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class))).thenAnswer(invocation -> {
+			ResultSetMapping<?> mapping = (ResultSetMapping<?>) invocation.getArguments()[1];
+			return asList(mapping.map(first),mapping.map(second));
+		});
+		
+		List<WebhookBatch> batches = service.findInvocations();
+		assertEquals(2,batches.size());
+		WebhookInvocation firstInvocation = batches.get(0).getWebhookInvocations().get(0);
+		WebhookInvocation secondInvocation = batches.get(1).getWebhookInvocations().get(0);
+		assertSame(firstInvocation.getEnvelope(),secondInvocation.getEnvelope());
+		assertEquals("{\"unit\":\"test\"}",parseJson(firstInvocation.getMessage()).getJsonObject("message").toString());
+		assertEquals("{\"unit\":\"test\"}",parseJson(secondInvocation.getMessage()).getJsonObject("message").toString());
+		verify(first).getString(6);
+		verify(second,never()).getString(6);
+	}
+	
+	private ResultSet claimedMessage(long webhookPK, String payload) throws SQLException {
+		ResultSet rs = mock(ResultSet.class);
+		when(rs.getLong(1)).thenReturn(webhookPK);
+		when(rs.getLong(2)).thenReturn(1L);
+		when(rs.getString(3)).thenReturn(event.getDomainEventId().toString());
+		when(rs.getString(4)).thenReturn(event.getDomainEventName().toString());
+		when(rs.getString(6)).thenReturn(payload);
+		when(rs.getTimestamp(7)).thenReturn(new Timestamp(event.getDateCreated().getTime()));
+		return rs;
+	}
+	
+	@Test
+	public void do_not_update_message_states_when_batch_has_no_results() {
+		service.invocationsCompleted(mock(WebhookBatch.class), emptyList());
+		verifyZeroInteractions(db);
+	}
+	
+	@Test
+	public void update_message_states_of_batch_at_once() {
+		WebhookInvocation first = newWebhookInvocation().withMessagePK(1L).build();
+		WebhookInvocation second = newWebhookInvocation().withMessagePK(2L).build();
+		
+		service.invocationsCompleted(mock(WebhookBatch.class), 
+									 asList(invocationSucceeded(first, OK, 0),
+											invocationFailed(second, 0)));
+		
+		verify(db).executeUpdate(any(StatementPreparator.class));
+	}
+	
+	@Test
+	public void release_expired_leases() {
+		when(db.executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class))).thenReturn(asList(3));
+		assertEquals(3,service.releaseExpiredLeases());
+	}
+	
+	@Test
+	public void do_not_claim_messages_of_webhook_with_exhausted_rate_limit() {
+		when(repository.execute(any(Query.class))).thenReturn(asList(webhook));
+		when(webhook.getRateLimit()).thenReturn(0.1);
+		when(webhook.getRateBurst()).thenReturn(1);
+		when(db.executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class))).thenReturn(asList(new SimpleEntry<>(1L,call)));
+		
+		assertFalse(service.findInvocations().isEmpty());
+		assertTrue(service.findInvocations().isEmpty());
+		verify(db).executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class));
+	}
+	
 }
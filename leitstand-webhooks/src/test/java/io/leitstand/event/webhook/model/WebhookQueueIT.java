@@ -39,6 +39,7 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
+import javax.enterprise.event.Event;
 import javax.persistence.EntityManager;
 
 import org.junit.After;
@@ -156,7 +157,8 @@ public class WebhookQueueIT extends WebhookIT{
 											mock(Messages.class), 
 											master,
 											new WebhookProvider(repository),
-											new WebhookStatisticsService(getDatabase()));
+											new WebhookStatisticsService(getDatabase(), new WebhookCircuitBreakers(mock(WebhookService.class)), new WebhookBatchSizes()),
+											mock(Event.class));
 		
 		
 	}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class WebhookRateLimiterTest {
+
+	private WebhookRateLimiter limiter = new WebhookRateLimiter(2, 4, 0);
+	
+	@Test
+	public void new_bucket_is_full() {
+		assertEquals(4,limiter.available(0));
+		assertEquals(0,limiter.delay(0));
+	}
+	
+	@Test
+	public void consume_tokens() {
+		limiter.acquire(3, 0);
+		assertEquals(1,limiter.available(0));
+	}
+	
+	@Test
+	public void refill_tokens_with_configured_rate() {
+		limiter.acquire(4, 0);
+		assertEquals(0,limiter.available(0));
+		assertEquals(500,limiter.delay(0));
+		assertEquals(1,limiter.available(500));
+		assertEquals(2,limiter.available(1000));
+	}
+	
+	@Test
+	public void do_not_exceed_burst_size() {
+		assertEquals(4,limiter.available(60000));
+	}
+	
+	@Test
+	public void return_unused_tokens() {
+		limiter.acquire(4, 0);
+		limiter.release(3, 0);
+		assertEquals(3,limiter.available(0));
+	}
+	
+	@Test
+	public void do_not_exceed_burst_size_when_returning_tokens() {
+		limiter.acquire(2, 0);
+		limiter.release(2, 500);
+		assertEquals(4,limiter.available(500));
+	}
+	
+	@Test
+	public void apply_modified_rate_limit() {
+		limiter.configure(1, 2, 0);
+		assertEquals(2,limiter.available(0));
+		limiter.acquire(2, 0);
+		assertEquals(1000,limiter.delay(0));
+	}
+	
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
+import static io.leitstand.commons.template.TemplateService.newTemplateService;
+import static io.leitstand.event.webhook.service.Endpoint.endpoint;
+import static io.leitstand.event.webhook.service.WebhookId.randomWebhookId;
+import static io.leitstand.event.webhook.service.WebhookName.webhookName;
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static java.util.Base64.getEncoder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.commons.model.Query;
+import io.leitstand.commons.model.Repository;
+import io.leitstand.security.crypto.MasterSecret;
+
+public class WebhookRegistryTest {
+	
+	private static final byte[] SECRET = toUtf8Bytes("secret");
+	private static final String SECRET64 = getEncoder().encodeToString(SECRET);
+
+	private Repository repository;
+	private MasterSecret secret;
+	private Webhook webhook;
+	private WebhookRewritingService rewriter;
+	private WebhookRegistry registry;
+	
+	@Before
+	public void initTestEnvironment() {
+		repository = mock(Repository.class);
+		secret = mock(MasterSecret.class);
+		rewriter = new WebhookRewritingService(newTemplateService());
+		webhook = mock(Webhook.class);
+		when(webhook.getId()).thenReturn(1L);
+		when(webhook.getWebhookId()).thenReturn(randomWebhookId());
+		when(webhook.getWebhookName()).thenReturn(webhookName("unittest"));
+		when(webhook.getEndpoint()).thenReturn(endpoint("http://test.leitstand.io"));
+		when(repository.execute(any(Query.class))).thenReturn(asList(webhook));
+		when(secret.decrypt(SECRET)).thenReturn(SECRET);
+		registry = new WebhookRegistry(repository, secret, rewriter, 60000);
+	}
+	
+	@Test
+	public void reuse_snapshot_when_no_webhook_was_modified() {
+		assertSame(registry.getSnapshot(), registry.getSnapshot());
+		verify(repository).execute(any(Query.class));
+		verify(secret,times(0)).decrypt(any(byte[].class));
+	}
+	
+	@Test
+	public void rebuild_snapshot_when_webhook_was_modified() {
+		WebhookRegistry.Snapshot snapshot = registry.getSnapshot();
+		registry.onWebhookModified(mock(WebhookModified.class));
+		assertNotSame(snapshot, registry.getSnapshot());
+		verify(repository,times(2)).execute(any(Query.class));
+	}
+	
+	@Test
+	public void rebuild_expired_snapshot() throws InterruptedException {
+		registry = new WebhookRegistry(repository, secret, rewriter, 0);
+		WebhookRegistry.Snapshot snapshot = registry.getSnapshot();
+		Thread.sleep(10);
+		assertNotSame(snapshot, registry.getSnapshot());
+	}
+	
+	@Test
+	public void compute_basic_authorization_header() {
+		when(webhook.isBasicAuthentication()).thenReturn(true);
+		when(webhook.getUser()).thenReturn("unittest");
+		when(webhook.getPassword64()).thenReturn(SECRET64);
+		
+		WebhookConfiguration config = registry.getSnapshot().getWebhook(1L);
+		assertEquals(format("Basic %s",getEncoder().encodeToString(toUtf8Bytes("unittest:secret"))),
+					 config.getAuthorization());
+	}
+	
+	@Test
+	public void compute_bearer_authorization_header() {
+		when(webhook.getAccessKey64()).thenReturn(SECRET64);
+		
+		WebhookConfiguration config = registry.getSnapshot().getWebhook(1L);
+		assertEquals("Bearer secret", config.getAuthorization());
+	}
+	
+	@Test
+	public void no_authorization_header_for_unauthenticated_webhook() {
+		WebhookConfiguration config = registry.getSnapshot().getWebhook(1L);
+		assertNull(config.getAuthorization());
+	}
+	
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+public class WebhookRequestPermitsTest {
+
+	@Test
+	public void grant_available_permit_immediately() {
+		WebhookRequestPermits permits = new WebhookRequestPermits(1);
+		assertTrue(permits.acquireAsync().isDone());
+		assertEquals(0,permits.availablePermits());
+	}
+
+	@Test
+	public void queue_request_until_permit_is_released() {
+		WebhookRequestPermits permits = new WebhookRequestPermits(1);
+		permits.acquireAsync();
+		CompletableFuture<Void> first = permits.acquireAsync();
+		CompletableFuture<Void> second = permits.acquireAsync();
+		assertFalse(first.isDone());
+		assertFalse(second.isDone());
+
+		permits.release();
+		assertTrue(first.isDone());
+		assertFalse(second.isDone());
+
+		permits.release();
+		assertTrue(second.isDone());
+		assertEquals(0,permits.availablePermits());
+	}
+
+	@Test
+	public void cancelled_request_does_not_consume_a_permit() {
+		WebhookRequestPermits permits = new WebhookRequestPermits(1);
+		permits.acquireAsync();
+		CompletableFuture<Void> cancelled = permits.acquireAsync();
+		CompletableFuture<Void> waiting = permits.acquireAsync();
+		cancelled.cancel(false);
+
+		permits.release();
+		assertTrue(waiting.isDone());
+
+		permits.release();
+		assertEquals(1,permits.availablePermits());
+	}
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.event.webhook.model;
+
+import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.event.queue.model.Topic.findTopicByName;
+import static io.leitstand.event.queue.service.DomainEvent.newDomainEvent;
+import static io.leitstand.event.queue.service.DomainEventId.randomDomainEventId;
+import static io.leitstand.event.queue.service.DomainEventName.domainEventName;
+import static io.leitstand.event.queue.service.TopicName.topicName;
+import static io.leitstand.event.webhook.model.Webhook.findWebhookById;
+import static io.leitstand.event.webhook.model.WebhookBatch.newWebhookBatch;
+import static io.leitstand.event.webhook.model.WebhookInvocation.newWebhookInvocation;
+import static io.leitstand.event.webhook.model.WebhookInvocationResult.invocationDeferred;
+import static io.leitstand.event.webhook.model.WebhookInvocationResult.invocationFailed;
+import static io.leitstand.event.webhook.model.WebhookInvocationResult.invocationRejected;
+import static io.leitstand.event.webhook.model.WebhookInvocationService.NODE_ID;
+import static io.leitstand.event.webhook.service.MessageState.FAILED;
+import static io.leitstand.event.webhook.service.MessageState.IN_PROGRESS;
+import static io.leitstand.event.webhook.service.MessageState.READY;
+import static io.leitstand.event.webhook.service.WebhookId.randomWebhookId;
+import static io.leitstand.event.webhook.service.WebhookName.webhookName;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Arrays.asList;
+import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.commons.model.Repository;
+import io.leitstand.event.queue.model.Message;
+import io.leitstand.event.queue.model.Topic;
+import io.leitstand.event.queue.service.TopicName;
+import io.leitstand.event.webhook.service.MessageState;
+import io.leitstand.event.webhook.service.WebhookId;
+import io.leitstand.event.webhook.service.WebhookName;
+
+public class WebhookRetryIT extends WebhookIT {
+
+	private static final TopicName   TOPIC_NAME   = topicName("retry");
+	private static final WebhookId   WEBHOOK_ID   = randomWebhookId();
+	private static final WebhookName WEBHOOK_NAME = webhookName("retry");
+
+	/**
+	 * Snapshot of a webhook queue entry.
+	 */
+	private static class QueueEntry {
+		private MessageState state;
+		private int attempts;
+		private Date nextAttempt;
+		private String leaseOwner;
+	}
+
+	private Repository repository;
+	private WebhookInvocationService service;
+	private Topic topic;
+	private Webhook webhook;
+
+	@Before
+	public void initService() {
+		repository = new Repository(getEntityManager());
+		transaction(() -> {
+			topic = repository.addIfAbsent(findTopicByName(TOPIC_NAME),
+										   () -> new Topic(TOPIC_NAME));
+			webhook = repository.addIfAbsent(findWebhookById(WEBHOOK_ID),
+											 () -> new Webhook(topic,WEBHOOK_ID,WEBHOOK_NAME));
+		});
+		service = new WebhookInvocationService(null, null, null, getDatabase());
+	}
+
+	@After
+	public void remove_all_messages() {
+		transaction(() -> {
+			getDatabase().executeUpdate(prepare("DELETE FROM BUS.WEBHOOK_MESSAGE"));
+			getDatabase().executeUpdate(prepare("DELETE FROM BUS.MESSAGE"));
+		});
+	}
+
+	@Test
+	public void return_failed_message_with_attempts_left_to_queue_with_backoff() {
+		Message message = leasedMessage(NODE_ID, 0);
+		long start = currentTimeMillis();
+
+		invocationsCompleted(invocationFailed(invocation(message), INTERNAL_SERVER_ERROR, start));
+
+		QueueEntry entry = queueEntry(message);
+		assertEquals(READY,entry.state);
+		assertEquals(1,entry.attempts);
+		assertNull(entry.leaseOwner);
+		// The initial backoff of 10 seconds is shortened by at most 50% jitter.
+		assertTrue(entry.nextAttempt.getTime() >= start + 4000);
+	}
+
+	@Test
+	public void keep_failed_message_when_attempts_are_exhausted() {
+		Message message = leasedMessage(NODE_ID, 4);
+
+		invocationsCompleted(invocationFailed(invocation(message), INTERNAL_SERVER_ERROR, currentTimeMillis()));
+
+		QueueEntry entry = queueEntry(message);
+		assertEquals(FAILED,entry.state);
+		assertEquals(5,entry.attempts);
+		assertNull(entry.nextAttempt);
+		assertNull(entry.leaseOwner);
+	}
+
+	@Test
+	public void do_not_count_an_attempt_for_deferred_and_rejected_messages() {
+		Message deferred = leasedMessage(NODE_ID, 2);
+		Message rejected = leasedMessage(NODE_ID, 2);
+
+		invocationsCompleted(invocationDeferred(invocation(deferred), SERVICE_UNAVAILABLE, currentTimeMillis()),
+							 invocationRejected(invocation(rejected)));
+
+		QueueEntry entry = queueEntry(deferred);
+		assertEquals(READY,entry.state);
+		assertEquals(2,entry.attempts);
+		assertNull(entry.leaseOwner);
+
+		entry = queueEntry(rejected);
+		assertEquals(READY,entry.state);
+		assertEquals(2,entry.attempts);
+		assertNull(entry.leaseOwner);
+	}
+
+	@Test
+	public void do_not_update_messages_leased_by_another_node() {
+		Message leased = leasedMessage("other", 0);
+		Message own = leasedMessage(NODE_ID, 0);
+
+		invocationsCompleted(invocationFailed(invocation(leased), INTERNAL_SERVER_ERROR, currentTimeMillis()),
+							 invocationFailed(invocation(own), INTERNAL_SERVER_ERROR, currentTimeMillis()));
+
+		QueueEntry entry = queueEntry(leased);
+		assertEquals(IN_PROGRESS,entry.state);
+		assertEquals(0,entry.attempts);
+		assertEquals("other",entry.leaseOwner);
+
+		assertEquals(READY,queueEntry(own).state);
+	}
+
+	private Message leasedMessage(String leaseOwner, int attempts) {
+		Message message = new Message(topic,
+									  newDomainEvent()
+									  .withTopicName(TOPIC_NAME)
+									  .withDomainEventId(randomDomainEventId())
+									  .withDomainEventName(domainEventName("event"))
+									  .build());
+		transaction(() -> {
+			repository.add(message);
+			Webhook_Message entry = new Webhook_Message(webhook,message);
+			entry.setMessageState(IN_PROGRESS);
+			repository.add(entry);
+		});
+		transaction(() -> {
+			getDatabase().executeUpdate(prepare("UPDATE BUS.WEBHOOK_MESSAGE SET LEASEOWNER = ?, ATTEMPTS = ? WHERE MESSAGE_ID = ?",
+												leaseOwner,
+												attempts,
+												message.getId()));
+		});
+		return message;
+	}
+
+	private static WebhookInvocation invocation(Message message) {
+		return newWebhookInvocation()
+			   .withMessagePK(message.getId())
+			   .build();
+	}
+
+	private void invocationsCompleted(WebhookInvocationResult... results) {
+		WebhookBatch batch = newWebhookBatch()
+							 .withWebhookPK(webhook.getId())
+							 .withWebhookName(WEBHOOK_NAME)
+							 .build();
+		transaction(() -> {
+			service.invocationsCompleted(batch, asList(results));
+		});
+	}
+
+	private QueueEntry queueEntry(Message message) {
+		QueueEntry[] entry = new QueueEntry[1];
+		transaction(() -> {
+			entry[0] = getDatabase().executeQuery(prepare("SELECT STATE, ATTEMPTS, TSNEXTATTEMPT, LEASEOWNER "+
+														  "FROM BUS.WEBHOOK_MESSAGE "+
+														  "WHERE WEBHOOK_ID = ? AND MESSAGE_ID = ?",
+														  webhook.getId(),
+														  message.getId()),
+												  rs -> {
+													  QueueEntry e = new QueueEntry();
+													  e.state = MessageState.valueOf(rs.getString(1));
+													  e.attempts = rs.getInt(2);
+													  e.nextAttempt = rs.getTimestamp(3);
+													  e.leaseOwner = rs.getString(4);
+													  return e;
+												  })
+								   .get(0);
+		});
+		return entry[0];
+	}
+
+}
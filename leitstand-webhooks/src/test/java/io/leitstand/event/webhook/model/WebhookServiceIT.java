@@ -31,6 +31,7 @@ import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
+import javax.enterprise.event.Event;
 import javax.persistence.EntityManager;
 
 import org.junit.Before;
@@ -92,7 +93,8 @@ public class WebhookServiceIT extends WebhookIT{
 											messages, 
 											master,
 											new WebhookProvider(repository),
-											new WebhookStatisticsService(getDatabase()));
+											new WebhookStatisticsService(getDatabase(), new WebhookCircuitBreakers(mock(WebhookService.class)), new WebhookBatchSizes()),
+											mock(Event.class));
 		
 		messagesCaptor = ArgumentCaptor.forClass(Message.class);
 		